@@ -0,0 +1,260 @@
+package io.projectriff.processor;
+
+import com.github.bsideup.liiklus.protocol.AckRequest;
+import com.github.bsideup.liiklus.protocol.ReactorLiiklusServiceGrpc;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces acknowledgements of consumed records, so that a single {@link AckRequest} per partition is sent to the
+ * gateway every so often, instead of one Ack RPC per record.
+ *
+ * <p>Liiklus acknowledgements are cumulative, so for each (topic, group, partition) only the highest contiguous offset
+ * seen so far needs to be retained. It is flushed once {@code batchSize} offsets have been recorded for a partition,
+ * or by a periodic flush every {@code interval}, whichever comes first. Acknowledging is thus taken off the per-record
+ * critical path entirely.</p>
+ *
+ * <p>Each acknowledgement sent is logged at {@code DEBUG} level, while a summary of the progress of each partition is
+ * logged at {@code INFO} level at most every {@link #SUMMARY_INTERVAL}.</p>
+ */
+class AckCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AckCoalescer.class);
+
+    private static final long NONE = -1L;
+
+    private static final Duration SUMMARY_INTERVAL = Duration.ofSeconds(30);
+
+    private final String group;
+
+    private final int groupVersion;
+
+    private final int batchSize;
+
+    private final Duration interval;
+
+    private final PipelineMetrics metrics;
+
+    private final ConcurrentMap<TopicPartition, PartitionAcks> partitions = new ConcurrentHashMap<>();
+
+    AckCoalescer(String group, int groupVersion, int batchSize, Duration interval, PipelineMetrics metrics) {
+        this.group = group;
+        this.groupVersion = groupVersion;
+        this.batchSize = batchSize;
+        this.interval = interval;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the (unique) handle used to record acknowledgements for the given partition of a topic.
+     */
+    PartitionAcks forPartition(FullyQualifiedTopic topic, ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub stub, int partition) {
+        return partitions.computeIfAbsent(new TopicPartition(topic, partition), k -> new PartitionAcks(stub, topic.getTopic(), partition));
+    }
+
+    /**
+     * Starts periodically flushing pending acknowledgements of all partitions.
+     */
+    Disposable start() {
+        return Flux.interval(interval, interval)
+                .doOnNext(tick -> flushAll().subscribe())
+                .subscribe();
+    }
+
+    /**
+     * Sends pending acknowledgements of all partitions, returning a {@link Mono} that completes once the gateway has
+     * replied to every one of them. Failures are logged and retried on the next flush, rather than propagated.
+     */
+    Mono<Void> flushAll() {
+        return Flux.fromIterable(partitions.values())
+                .flatMap(PartitionAcks::flush)
+                .then();
+    }
+
+    /**
+     * Holds the acknowledgement state of a single partition.
+     *
+     * <p>At most one Ack RPC is in flight for the partition at any time. Acknowledgements recorded, and flushes
+     * requested, while one is in flight are sent as a single Ack RPC once it completes, so that offsets reach the
+     * gateway in order and a failed (or late) Ack RPC can't undo a later one.</p>
+     */
+    class PartitionAcks {
+
+        private final ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub stub;
+
+        private final String topic;
+
+        private final int partition;
+
+        private final Timer latency;
+
+        private long pending = NONE;
+
+        /**
+         * The highest offset the gateway has confirmed the acknowledgement of.
+         */
+        private long confirmed = NONE;
+
+        private boolean sending;
+
+        /**
+         * Flushes waiting for the Ack RPC in flight to complete.
+         */
+        private List<MonoSink<Void>> awaitingCurrent = new ArrayList<>();
+
+        /**
+         * Flushes waiting for the Ack RPC that follows the one in flight to complete.
+         */
+        private List<MonoSink<Void>> awaitingNext = new ArrayList<>();
+
+        private int unflushed;
+
+        private long unsummarized;
+
+        private long summarizedAt = System.nanoTime();
+
+        private PartitionAcks(ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub stub, String topic, int partition) {
+            this.stub = stub;
+            this.topic = topic;
+            this.partition = partition;
+            this.latency = metrics.ack(topic);
+        }
+
+        /**
+         * Returns the highest offset known to be acknowledgeable on this partition (whether already sent to the
+         * gateway or not), or {@code -1} if none.
+         */
+        synchronized long lastAcknowledged() {
+            return pending;
+        }
+
+        /**
+         * Records that every record up to (and including) the given offset can be acknowledged.
+         *
+         * @param records the number of records processed since the previous call
+         */
+        void ack(long offset, int records) {
+            boolean flush;
+            synchronized (this) {
+                if (offset <= pending) {
+                    return;
+                }
+                pending = offset;
+                unsummarized += records;
+                unflushed += records;
+                flush = unflushed >= batchSize && !sending;
+            }
+            if (flush) {
+                flush().subscribe();
+            }
+        }
+
+        /**
+         * Returns a {@link Mono} that sends the pending acknowledgement, and completes once the gateway has replied to
+         * an Ack RPC covering it. If an Ack RPC is in flight, the pending acknowledgement is sent once it completes.
+         */
+        Mono<Void> flush() {
+            return Mono.create(sink -> {
+                long offset;
+                synchronized (this) {
+                    if (pending <= confirmed) {
+                        offset = NONE;
+                    } else if (sending) {
+                        awaitingNext.add(sink);
+                        return;
+                    } else {
+                        awaitingCurrent.add(sink);
+                        offset = startSending();
+                    }
+                }
+                if (offset == NONE) {
+                    sink.success();
+                } else {
+                    send(offset);
+                }
+            });
+        }
+
+        private long startSending() {
+            sending = true;
+            unflushed = 0;
+            return pending;
+        }
+
+        private void send(long offset) {
+            long summarized = 0L;
+            long elapsed = 0L;
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (now - summarizedAt >= SUMMARY_INTERVAL.toNanos()) {
+                    summarized = unsummarized;
+                    elapsed = now - summarizedAt;
+                    unsummarized = 0L;
+                    summarizedAt = now;
+                }
+            }
+            if (summarized > 0L) {
+                logger.info("{} partition {} for group {}: processed {} records ({} records/s), acknowledged up to offset {}",
+                        topic, partition, group, summarized, summarized * 1_000_000_000L / elapsed, offset);
+            }
+            logger.debug("ACKing {} for group {}: offset={}, part={}", topic, group, offset, partition);
+            long start = System.nanoTime();
+            stub.ack(AckRequest.newBuilder()
+                    .setGroup(group)
+                    .setGroupVersion(groupVersion)
+                    .setOffset(offset)
+                    .setPartition(partition)
+                    .setTopic(topic)
+                    .build())
+                    .subscribe(
+                            empty -> latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS),
+                            error -> {
+                                logger.warn("Failed to ACK {} for group {}: offset={}, part={}", topic, group, offset, partition, error);
+                                sent(offset, false);
+                            },
+                            () -> sent(offset, true));
+        }
+
+        /**
+         * Completes the flushes the Ack RPC of the given offset was sent for, and sends the next one if flushes are
+         * waiting for it, or if enough records have been acknowledged meanwhile. After a failure, pending
+         * acknowledgements are otherwise left to the next flush.
+         */
+        private void sent(long offset, boolean success) {
+            List<MonoSink<Void>> completed;
+            long next = NONE;
+            synchronized (this) {
+                if (success) {
+                    confirmed = Math.max(confirmed, offset);
+                }
+                completed = awaitingCurrent;
+                awaitingCurrent = awaitingNext;
+                awaitingNext = new ArrayList<>();
+                boolean wanted = !awaitingCurrent.isEmpty() || (success && unflushed >= batchSize);
+                if (wanted && pending > confirmed) {
+                    next = startSending();
+                } else {
+                    sending = false;
+                    completed.addAll(awaitingCurrent);
+                    awaitingCurrent = new ArrayList<>();
+                }
+            }
+            completed.forEach(MonoSink::success);
+            if (next != NONE) {
+                send(next);
+            }
+        }
+    }
+}
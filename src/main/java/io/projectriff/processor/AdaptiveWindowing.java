@@ -0,0 +1,92 @@
+package io.projectriff.processor;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.ToIntFunction;
+
+/**
+ * A time based {@link WindowingStrategy} whose window length adapts to the observed behavior of the function.
+ *
+ * <p>Longer windows amortize the fixed cost of an invocation (opening the RPC stream, sending the start frame and
+ * draining the function at the end of the window) over more records, but also delay the point at which records are
+ * considered processed. After each invocation, the window length is scaled by the ratio between the latency
+ * objective and the (smoothed) observed mean record latency, converging on the longest windows that meet the
+ * objective. Windows without records say nothing about latency, and do not rescale the length. Windows are never
+ * made so short that the per-invocation overhead would dominate them.</p>
+ */
+final class AdaptiveWindowing implements WindowingStrategy {
+
+    /**
+     * Windows are kept at least this many times longer than the observed per-invocation overhead.
+     */
+    private static final int MIN_OVERHEAD_AMORTIZATION = 4;
+
+    /**
+     * Bounds the factor by which the window length may change after a single invocation.
+     */
+    private static final double MAX_STEP = 2.0;
+
+    /**
+     * Weight given to the latest observation in the exponentially weighted moving averages.
+     */
+    private static final double SMOOTHING = 0.3;
+
+    private final long latencyObjective;
+
+    private final long minLength;
+
+    private final long maxLength;
+
+    private volatile long length;
+
+    private double latency = Double.NaN;
+
+    private double overhead = Double.NaN;
+
+    AdaptiveWindowing(Duration latencyObjective, Duration minLength, Duration maxLength) {
+        this.latencyObjective = latencyObjective.toNanos();
+        this.minLength = minLength.toNanos();
+        this.maxLength = maxLength.toNanos();
+        this.length = clamp(this.latencyObjective, this.minLength, this.maxLength);
+    }
+
+    @Override
+    public <T> Flux<Flux<T>> window(Flux<T> records, ToIntFunction<? super T> sizeOf) {
+        return records.window(Mono.defer(() -> Mono.delay(Duration.ofNanos(length))).repeat());
+    }
+
+    @Override
+    public synchronized void invocationCompleted(InvocationStats stats) {
+        overhead = smooth(overhead, stats.getSetupTime().plus(stats.getDrainTime()).toNanos());
+        double next = length;
+        if (stats.getRecords() > 0) {
+            latency = smooth(latency, stats.getMeanRecordLatency().toNanos());
+            double step = Math.max(1.0 / MAX_STEP, Math.min(MAX_STEP, latencyObjective / Math.max(1.0, latency)));
+            next = length * step;
+        }
+        long floor = Math.max(minLength, (long) (overhead * MIN_OVERHEAD_AMORTIZATION));
+        length = clamp((long) next, Math.min(floor, maxLength), maxLength);
+    }
+
+    /**
+     * Returns the length of the next windows.
+     */
+    Duration getLength() {
+        return Duration.ofNanos(length);
+    }
+
+    private static double smooth(double average, long observation) {
+        return Double.isNaN(average) ? observation : average + SMOOTHING * (observation - average);
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    public String toString() {
+        return "adaptive:" + Duration.ofNanos(latencyObjective) + "," + Duration.ofNanos(minLength) + "," + Duration.ofNanos(maxLength);
+    }
+}
@@ -0,0 +1,123 @@
+package io.projectriff.processor;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * A non-blocking semaphore: acquiring permits returns a {@link Mono} that completes once they are available, so that
+ * a reactive pipeline waiting for permits simply stops requesting data, instead of blocking a thread.
+ *
+ * <p>Permits are granted in the order they were asked for. A request for more permits than the total capacity is
+ * granted once every permit is available (and then takes them all), so that it can't wait forever.</p>
+ */
+class AsyncPermits {
+
+    private final long capacity;
+
+    private final Queue<Waiter> waiters = new ArrayDeque<>();
+
+    private long available;
+
+    AsyncPermits(long capacity) {
+        if (capacity <= 0L) {
+            throw new IllegalArgumentException("Expected a positive number of permits, got " + capacity);
+        }
+        this.capacity = capacity;
+        this.available = capacity;
+    }
+
+    /**
+     * Returns a {@link Mono} that completes (empty) once the given number of permits has been acquired.
+     */
+    Mono<Void> acquire(long permits) {
+        long clamped = clamp(permits);
+        return Mono.create(sink -> {
+            boolean granted = false;
+            synchronized (this) {
+                if (waiters.isEmpty() && available >= clamped) {
+                    available -= clamped;
+                    granted = true;
+                } else {
+                    Waiter waiter = new Waiter(clamped, sink);
+                    waiters.add(waiter);
+                    sink.onCancel(() -> cancel(waiter));
+                }
+            }
+            if (granted) {
+                sink.success();
+            }
+        });
+    }
+
+    /**
+     * Acquires the given number of permits if they are immediately available, without waiting.
+     *
+     * @return whether the permits have been acquired
+     */
+    synchronized boolean tryAcquire(long permits) {
+        long clamped = clamp(permits);
+        if (waiters.isEmpty() && available >= clamped) {
+            available -= clamped;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives back permits previously acquired, possibly granting pending requests.
+     */
+    void release(long permits) {
+        List<MonoSink<Void>> granted;
+        synchronized (this) {
+            available += clamp(permits);
+            granted = grantWaiters();
+        }
+        granted.forEach(MonoSink::success);
+    }
+
+    private void cancel(Waiter waiter) {
+        List<MonoSink<Void>> granted;
+        synchronized (this) {
+            if (!waiters.remove(waiter)) {
+                return;
+            }
+            granted = grantWaiters();
+        }
+        granted.forEach(MonoSink::success);
+    }
+
+    /**
+     * Hands available permits to waiters, in order. Must be called while holding the lock, and the returned sinks
+     * completed after releasing it.
+     */
+    private List<MonoSink<Void>> grantWaiters() {
+        List<MonoSink<Void>> granted = new ArrayList<>();
+        while (!waiters.isEmpty() && available >= waiters.peek().permits) {
+            Waiter waiter = waiters.poll();
+            available -= waiter.permits;
+            granted.add(waiter.sink);
+        }
+        return granted;
+    }
+
+    private long clamp(long permits) {
+        return Math.min(permits, capacity);
+    }
+
+    private static class Waiter {
+
+        private final long permits;
+
+        private final MonoSink<Void> sink;
+
+        private Waiter(long permits, MonoSink<Void> sink) {
+            this.permits = permits;
+            this.sink = sink;
+        }
+    }
+}
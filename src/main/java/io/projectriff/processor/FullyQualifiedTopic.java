@@ -1,7 +1,9 @@
 package io.projectriff.processor;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
@@ -10,28 +12,108 @@ import java.util.stream.Collectors;
  * that is responsible for it. This allows riff to support multiple gateways (and hence maybe multiple
  * backing broker technologies) until liiklus supports that itself, if ever.
  *
+ * <p>When used as an input, a topic may also carry tuning settings for how it is received, as query parameters (e.g.
+ * {@code gateway:6565/my-topic?maxAssignments=4&prefetch=1024&lowTide=256}):</p>
+ * <ul>
+ *     <li>{@code maxAssignments}: the maximum number of partitions received from concurrently,</li>
+ *     <li>{@code prefetch}: the number of records requested ahead for each partition,</li>
+ *     <li>{@code lowTide}: the number of records consumed after which more records are requested for a partition.</li>
+ * </ul>
+ * <p>Unset settings fall back to the processor defaults, and {@code lowTide} may not exceed {@code prefetch}. Settings
+ * are rejected on output topics. They don't take part in the identity of a topic.</p>
+ *
  * @author Florent Biville
  * @author Eric Bottard
  */
 public class FullyQualifiedTopic {
 
+    /**
+     * Value of a tuning setting that has not been set.
+     */
+    public static final int UNSET = 0;
+
+    private static final String MAX_ASSIGNMENTS = "maxAssignments";
+    private static final String PREFETCH = "prefetch";
+    private static final String LOW_TIDE = "lowTide";
+
     private final String gatewayAddress;
     private final String topic;
+    private final int maxAssignments;
+    private final int prefetch;
+    private final int lowTide;
+
+    /**
+     * Parses a comma separated list of input topics, which may carry tuning settings.
+     */
+    public static List<FullyQualifiedTopic> parseInputs(String configurations) {
+        return parseMultiple(configurations, true);
+    }
+
+    /**
+     * Parses a comma separated list of output topics, which may not carry tuning settings.
+     */
+    public static List<FullyQualifiedTopic> parseOutputs(String configurations) {
+        return parseMultiple(configurations, false);
+    }
 
-    public static List<FullyQualifiedTopic> parseMultiple(String configurations) {
+    private static List<FullyQualifiedTopic> parseMultiple(String configurations, boolean withSettings) {
         return Arrays.stream(configurations.split(","))
-                .map(FullyQualifiedTopic::parse)
+                .map(configuration -> parse(configuration, withSettings))
                 .collect(Collectors.toList());
     }
 
-    private static FullyQualifiedTopic parse(String configuration) {
+    private static FullyQualifiedTopic parse(String configuration, boolean withSettings) {
         int slashIndex = configuration.indexOf('/');
-        return new FullyQualifiedTopic(configuration.substring(0, slashIndex), configuration.substring(1 + slashIndex));
+        if (slashIndex == -1) {
+            throw new RuntimeException(String.format("Expected a topic in the form gatewayAddress:port/topicName, got \"%s\"", configuration));
+        }
+        int queryIndex = configuration.indexOf('?', slashIndex);
+        String gatewayAddress = configuration.substring(0, slashIndex);
+        if (queryIndex == -1) {
+            return new FullyQualifiedTopic(gatewayAddress, configuration.substring(1 + slashIndex));
+        }
+        if (!withSettings) {
+            throw new RuntimeException(String.format("Expected no tuning settings on an output topic, got \"%s\"", configuration));
+        }
+        Map<String, Integer> settings = new HashMap<>();
+        for (String setting : configuration.substring(1 + queryIndex).split("&")) {
+            int equalsIndex = setting.indexOf('=');
+            String key = equalsIndex == -1 ? setting : setting.substring(0, equalsIndex);
+            if (!Arrays.asList(MAX_ASSIGNMENTS, PREFETCH, LOW_TIDE).contains(key) || equalsIndex == -1) {
+                throw new RuntimeException(String.format("Expected one of %s=<n>, %s=<n> or %s=<n>, got \"%s\" in \"%s\"",
+                        MAX_ASSIGNMENTS, PREFETCH, LOW_TIDE, setting, configuration));
+            }
+            try {
+                int value = Integer.parseInt(setting.substring(1 + equalsIndex));
+                if (value <= 0) {
+                    throw new NumberFormatException();
+                }
+                settings.put(key, value);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException(String.format("Expected a positive integer value for %s, got \"%s\" in \"%s\"",
+                        key, setting.substring(1 + equalsIndex), configuration), e);
+            }
+        }
+        int prefetch = settings.getOrDefault(PREFETCH, UNSET);
+        int lowTide = settings.getOrDefault(LOW_TIDE, UNSET);
+        if (prefetch != UNSET && lowTide > prefetch) {
+            throw new RuntimeException(String.format("Expected %s to be at most %s (%d), got %d in \"%s\"",
+                    LOW_TIDE, PREFETCH, prefetch, lowTide, configuration));
+        }
+        return new FullyQualifiedTopic(gatewayAddress, configuration.substring(1 + slashIndex, queryIndex),
+                settings.getOrDefault(MAX_ASSIGNMENTS, UNSET), prefetch, lowTide);
     }
 
     public FullyQualifiedTopic(String gatewayAddress, String topic) {
+        this(gatewayAddress, topic, UNSET, UNSET, UNSET);
+    }
+
+    public FullyQualifiedTopic(String gatewayAddress, String topic, int maxAssignments, int prefetch, int lowTide) {
         this.gatewayAddress = gatewayAddress;
         this.topic = topic;
+        this.maxAssignments = maxAssignments;
+        this.prefetch = prefetch;
+        this.lowTide = lowTide;
     }
 
     public String getGatewayAddress() {
@@ -42,6 +124,28 @@ public class FullyQualifiedTopic {
         return topic;
     }
 
+    /**
+     * Returns the maximum number of partitions of this topic received from concurrently, or {@link #UNSET}.
+     */
+    public int getMaxAssignments() {
+        return maxAssignments;
+    }
+
+    /**
+     * Returns the number of records requested ahead for each partition of this topic, or {@link #UNSET}.
+     */
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Returns the number of records consumed after which more records are requested for a partition of this topic,
+     * or {@link #UNSET}.
+     */
+    public int getLowTide() {
+        return lowTide;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
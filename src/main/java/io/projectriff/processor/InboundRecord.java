@@ -0,0 +1,76 @@
+package io.projectriff.processor;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * A record received from one of the input streams, converted to its (serialized) RPC form, and remembering where it came from so
+ * that it can be acknowledged once processed.
+ */
+class InboundRecord {
+
+    private final ByteString signal;
+
+    private final OffsetTracker tracker;
+
+    private final long sequence;
+
+    private final int lane;
+
+    private final AsyncPermits inFlightBytes;
+
+    private final int bytes;
+
+    /**
+     * @param inFlightBytes the budget the record size has been taken from, to give back once processed, or
+     *                      {@code null} if unbounded
+     * @param bytes         the size of the record, as taken from the budget
+     */
+    InboundRecord(ByteString signal, OffsetTracker tracker, long offset, int lane, AsyncPermits inFlightBytes, int bytes) {
+        this.signal = signal;
+        this.tracker = tracker;
+        this.sequence = tracker.track(offset);
+        this.lane = lane;
+        this.inFlightBytes = inFlightBytes;
+        this.bytes = bytes;
+    }
+
+    ByteString getSignal() {
+        return signal;
+    }
+
+    /**
+     * Returns the index of the concurrent invocation stream this record should be sent to.
+     */
+    int getLane() {
+        return lane;
+    }
+
+    /**
+     * Returns the size, in bytes, of this record.
+     */
+    int size() {
+        return signal.size();
+    }
+
+    /**
+     * Signals that this record has been fully processed, i.e. that every result derived from it has been published.
+     */
+    void processed() {
+        tracker.complete(sequence);
+        release();
+    }
+
+    /**
+     * Signals that this record won't be processed by this process, e.g. because its invocation failed. Its size is
+     * given back to the budget, but it is not acknowledged, so that it is received again once processing resumes.
+     */
+    void discarded() {
+        release();
+    }
+
+    private void release() {
+        if (inFlightBytes != null) {
+            inFlightBytes.release(bytes);
+        }
+    }
+}
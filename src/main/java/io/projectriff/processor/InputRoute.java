@@ -0,0 +1,98 @@
+package io.projectriff.processor;
+
+import com.github.bsideup.liiklus.protocol.ReactorLiiklusServiceGrpc;
+import com.google.protobuf.ByteString;
+
+/**
+ * Everything needed to receive records from one of the input streams and turn them into invocation signals, resolved
+ * once at startup so that the per-record path performs no lookup.
+ */
+class InputRoute {
+
+    private final int index;
+
+    private final FullyQualifiedTopic topic;
+
+    private final ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub stub;
+
+    private final ReceiveStub receiver;
+
+    private final ByteString argIndexSuffix;
+
+    private final AsyncPermits assignments;
+
+    private final int prefetch;
+
+    private final int lowTide;
+
+    /**
+     * Creates the route for an input, whose tuning settings default to receiving from any number of partitions, with
+     * the given prefetch and a low tide of 75% of the prefetch.
+     */
+    InputRoute(int index, FullyQualifiedTopic topic, ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub stub, int defaultPrefetch) {
+        this.index = index;
+        this.topic = topic;
+        this.stub = stub;
+        this.receiver = new ReceiveStub(stub.getChannel());
+        this.argIndexSuffix = Transcoding.argIndexSuffix(index);
+        this.assignments = new AsyncPermits(topic.getMaxAssignments() == FullyQualifiedTopic.UNSET ? Integer.MAX_VALUE : topic.getMaxAssignments());
+        this.prefetch = topic.getPrefetch() == FullyQualifiedTopic.UNSET ? defaultPrefetch : topic.getPrefetch();
+        this.lowTide = topic.getLowTide() == FullyQualifiedTopic.UNSET ? prefetch - (prefetch >> 2) : topic.getLowTide();
+        if (lowTide > prefetch) {
+            throw new RuntimeException(String.format("Expected the low tide of %s to be at most its prefetch (%d), got %d", topic, prefetch, lowTide));
+        }
+    }
+
+    FullyQualifiedTopic getTopic() {
+        return topic;
+    }
+
+    ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub getStub() {
+        return stub;
+    }
+
+    /**
+     * Returns the stub to receive records of this input with, which only asks for records as they are requested.
+     */
+    ReceiveStub getReceiver() {
+        return receiver;
+    }
+
+    /**
+     * Returns the bytes to append to an at-rest message read from this input to turn it into an input frame.
+     *
+     * @see Transcoding#inputSignal(ByteString, ByteString)
+     */
+    ByteString getArgIndexSuffix() {
+        return argIndexSuffix;
+    }
+
+    /**
+     * Returns the permits bounding the number of partitions of this input received from concurrently.
+     */
+    AsyncPermits getAssignments() {
+        return assignments;
+    }
+
+    /**
+     * Returns the number of records requested ahead for each partition (the high tide).
+     */
+    int getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Returns the number of records consumed after which more records are requested for a partition.
+     */
+    int getLowTide() {
+        return lowTide;
+    }
+
+    @Override
+    public String toString() {
+        return "InputRoute{" +
+                "index=" + index +
+                ", topic=" + topic +
+                '}';
+    }
+}
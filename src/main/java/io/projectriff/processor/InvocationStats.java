@@ -0,0 +1,86 @@
+package io.projectriff.processor;
+
+import java.time.Duration;
+
+/**
+ * Timings observed for a single, complete, invocation of the function.
+ */
+public final class InvocationStats {
+
+    private final int records;
+
+    private final long bytes;
+
+    private final Duration windowDuration;
+
+    private final Duration setupTime;
+
+    private final Duration drainTime;
+
+    private final Duration meanRecordLatency;
+
+    InvocationStats(int records, long bytes, Duration windowDuration, Duration setupTime, Duration drainTime, Duration meanRecordLatency) {
+        this.records = records;
+        this.bytes = bytes;
+        this.windowDuration = windowDuration;
+        this.setupTime = setupTime;
+        this.drainTime = drainTime;
+        this.meanRecordLatency = meanRecordLatency;
+    }
+
+    /**
+     * Returns the number of input records that made up the invocation.
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the total size, in bytes, of the input records that made up the invocation.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the time elapsed between the start and the end of the window of input records.
+     */
+    public Duration getWindowDuration() {
+        return windowDuration;
+    }
+
+    /**
+     * Returns the time it took to open the invocation RPC stream and send the start frame.
+     */
+    public Duration getSetupTime() {
+        return setupTime;
+    }
+
+    /**
+     * Returns the time it took, once the input of the invocation was complete, for the function to complete its
+     * output and for every result to be published.
+     */
+    public Duration getDrainTime() {
+        return drainTime;
+    }
+
+    /**
+     * Returns the mean time elapsed between a record joining the invocation and its results being published. Only
+     * meaningful if {@link #getRecords()} is positive.
+     */
+    public Duration getMeanRecordLatency() {
+        return meanRecordLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "InvocationStats{" +
+                "records=" + records +
+                ", bytes=" + bytes +
+                ", windowDuration=" + windowDuration +
+                ", setupTime=" + setupTime +
+                ", drainTime=" + drainTime +
+                ", meanRecordLatency=" + meanRecordLatency +
+                '}';
+    }
+}
@@ -0,0 +1,151 @@
+package io.projectriff.processor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of the records that made up the input of a single function invocation, so that they are only considered
+ * processed once the invocation is over and every result it produced has been published.
+ *
+ * <p>The riff RPC protocol does not correlate results to individual inputs, hence the invocation window is the finest
+ * granularity at which completion can safely be tracked. Completion is reference counted: one reference is held by
+ * the input side, one by the output side, plus one per result that is yet to be published.</p>
+ *
+ * <p>An invocation that fails or is cancelled is abandoned instead: its records are not acknowledged, so that they
+ * are received again once processing resumes, but their bytes are given back to the in-flight budget.</p>
+ *
+ * <p>Timings of the invocation are reported to a listener once it is complete.</p>
+ */
+class InvocationWindow {
+
+    private final List<InboundRecord> records = new ArrayList<>();
+
+    private final AtomicInteger references = new AtomicInteger(2);
+
+    private final Consumer<InvocationStats> listener;
+
+    private volatile long openedAt;
+
+    private volatile long startedAt;
+
+    private volatile long inputStartedAt;
+
+    private volatile long inputCompletedAt;
+
+    /**
+     * The sum of record arrival times, relative to {@link #openedAt}.
+     */
+    private long arrivals;
+
+    private long bytes;
+
+    private boolean abandoned;
+
+    InvocationWindow(Consumer<InvocationStats> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Signals that the invocation RPC is being opened.
+     */
+    void opened() {
+        openedAt = System.nanoTime();
+    }
+
+    /**
+     * Signals that the start frame of the invocation is being sent.
+     */
+    void started() {
+        startedAt = System.nanoTime();
+    }
+
+    /**
+     * Signals that the window of records for this invocation starts.
+     */
+    void inputStarted() {
+        inputStartedAt = System.nanoTime();
+    }
+
+    void add(InboundRecord record) {
+        synchronized (this) {
+            if (!abandoned) {
+                records.add(record);
+                arrivals += System.nanoTime() - openedAt;
+                bytes += record.size();
+                return;
+            }
+        }
+        record.discarded();
+    }
+
+    /**
+     * Signals that this invocation failed or was cancelled. Records added so far, and any record added afterwards,
+     * are discarded.
+     */
+    void abandon() {
+        List<InboundRecord> discarded;
+        synchronized (this) {
+            if (abandoned) {
+                return;
+            }
+            abandoned = true;
+            discarded = new ArrayList<>(records);
+            records.clear();
+        }
+        discarded.forEach(InboundRecord::discarded);
+    }
+
+    /**
+     * Signals that the input of this invocation is complete.
+     */
+    void inputComplete() {
+        inputCompletedAt = System.nanoTime();
+        release();
+    }
+
+    /**
+     * Signals that the function is done emitting results for this invocation.
+     */
+    void outputComplete() {
+        release();
+    }
+
+    /**
+     * Signals that a result of this invocation is about to be published.
+     */
+    void retain() {
+        references.incrementAndGet();
+    }
+
+    /**
+     * Signals that a result of this invocation has been published.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            long completedAt = System.nanoTime();
+            List<InboundRecord> processed;
+            long meanArrival;
+            long totalBytes;
+            synchronized (this) {
+                if (abandoned) {
+                    return;
+                }
+                processed = new ArrayList<>(records);
+                meanArrival = records.isEmpty() ? 0L : arrivals / records.size();
+                totalBytes = bytes;
+                records.clear();
+            }
+            processed.forEach(InboundRecord::processed);
+            listener.accept(new InvocationStats(
+                    processed.size(),
+                    totalBytes,
+                    Duration.ofNanos(Math.max(0L, inputCompletedAt - inputStartedAt)),
+                    Duration.ofNanos(Math.max(0L, startedAt - openedAt)),
+                    Duration.ofNanos(completedAt - inputCompletedAt),
+                    Duration.ofNanos(completedAt - openedAt - meanArrival)));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.projectriff.processor;
+
+import com.github.bsideup.liiklus.protocol.GetOffsetsRequest;
+import com.github.bsideup.liiklus.protocol.ReactorLiiklusServiceGrpc;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Periodically polls the offsets committed by the consumer group on each input stream, and exports the number of
+ * uncommitted in-flight records (received but not yet committed) per partition and in total, as gauges.
+ *
+ * <p>This is not the backlog of the consumer group on the broker, which the gateway doesn't expose: records not
+ * delivered to the processor yet are not counted. Records are committed once their invocation window completes, so
+ * with long windows the gauges mostly reflect the window length. A partition for which no offset has been committed
+ * yet reports an unknown ({@code NaN}) value.</p>
+ */
+class LagMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(LagMonitor.class);
+
+    private static final String UNCOMMITTED = "riff.processor.uncommitted";
+
+    private final String group;
+
+    private final int groupVersion;
+
+    private final Map<FullyQualifiedTopic, ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub> stubsPerInput;
+
+    private final MeterRegistry registry;
+
+    private final ConcurrentMap<TopicPartition, PartitionLag> partitions = new ConcurrentHashMap<>();
+
+    LagMonitor(String group, int groupVersion, Map<FullyQualifiedTopic, ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub> stubsPerInput, MeterRegistry registry) {
+        this.group = group;
+        this.groupVersion = groupVersion;
+        this.stubsPerInput = stubsPerInput;
+        this.registry = registry;
+        Gauge.builder(UNCOMMITTED + ".total", this, LagMonitor::totalLag)
+                .description("Number of in-flight records received but not yet committed, across all input partitions")
+                .register(registry);
+    }
+
+    /**
+     * Returns the (unique) handle used to report the latest offset received on the given partition of a topic.
+     */
+    PartitionLag forPartition(FullyQualifiedTopic topic, int partition) {
+        return partitions.computeIfAbsent(new TopicPartition(topic, partition), k -> {
+            PartitionLag lag = new PartitionLag();
+            Gauge.builder(UNCOMMITTED, lag, PartitionLag::lag)
+                    .description("Number of in-flight records received but not yet committed")
+                    .tag("topic", topic.getTopic())
+                    .tag("partition", Integer.toString(partition))
+                    .register(registry);
+            return lag;
+        });
+    }
+
+    /**
+     * Starts polling committed offsets at the given interval.
+     */
+    Disposable start(Duration interval) {
+        return Flux.interval(Duration.ZERO, interval)
+                .concatMap(tick -> Flux.fromIterable(stubsPerInput.entrySet())
+                        .flatMap(input -> input.getValue()
+                                .getOffsets(GetOffsetsRequest.newBuilder()
+                                        .setTopic(input.getKey().getTopic())
+                                        .setGroup(group)
+                                        .setGroupVersion(groupVersion)
+                                        .build())
+                                .doOnNext(reply -> reply.getOffsetsMap()
+                                        .forEach((partition, offset) -> forPartition(input.getKey(), partition).committed = offset))
+                                .onErrorResume(error -> {
+                                    logger.warn("Failed to get committed offsets of {} for group {}", input.getKey(), group, error);
+                                    return Mono.empty();
+                                })))
+                .subscribe();
+    }
+
+    private double totalLag() {
+        return partitions.values().stream()
+                .mapToDouble(PartitionLag::lag)
+                .filter(lag -> !Double.isNaN(lag))
+                .sum();
+    }
+
+    /**
+     * Holds the received and committed offsets of a single partition.
+     */
+    static class PartitionLag {
+
+        private static final long NONE = -1L;
+
+        private volatile long received = NONE;
+
+        private volatile long committed = NONE;
+
+        void received(long offset) {
+            received = offset;
+        }
+
+        private double lag() {
+            long committed = this.committed;
+            long received = this.received;
+            if (committed == NONE) {
+                return Double.NaN;
+            }
+            return received == NONE ? 0.0 : Math.max(0L, received - committed);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.projectriff.processor;
+
+/**
+ * Tracks the offsets of records received on a single partition assignment that are still being processed, and
+ * acknowledges the low watermark: the highest offset below which every received record has been fully processed.
+ *
+ * <p>Records are registered in the order they are received, and may complete in any order. In-flight offsets are kept
+ * in a primitive ring buffer (indexed by a monotonically increasing sequence number), alongside a bitset of completion
+ * flags, so that tracking thousands of in-flight records neither allocates nor scans.</p>
+ */
+class OffsetTracker {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final AckCoalescer.PartitionAcks acks;
+
+    /**
+     * The offsets of in-flight records, indexed by {@code sequence & mask}.
+     */
+    private long[] offsets;
+
+    /**
+     * Completion flags of in-flight records, as a bitset over the slots of {@link #offsets}.
+     */
+    private long[] completed;
+
+    private int mask;
+
+    /**
+     * The sequence number of the oldest record that is not yet complete.
+     */
+    private long head;
+
+    /**
+     * The sequence number that will be handed out to the next tracked record.
+     */
+    private long tail;
+
+    OffsetTracker(AckCoalescer.PartitionAcks acks) {
+        this.acks = acks;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Starts tracking a received record, returning a sequence number to later pass to {@link #complete(long)}.
+     */
+    synchronized long track(long offset) {
+        if (tail - head == offsets.length) {
+            grow();
+        }
+        int slot = (int) (tail & mask);
+        offsets[slot] = offset;
+        completed[slot >>> 6] &= ~(1L << slot);
+        return tail++;
+    }
+
+    /**
+     * Marks the record with the given sequence number as fully processed, possibly advancing the acknowledged
+     * watermark.
+     */
+    void complete(long sequence) {
+        int advanced = 0;
+        long watermark = 0L;
+        synchronized (this) {
+            int slot = (int) (sequence & mask);
+            completed[slot >>> 6] |= 1L << slot;
+            while (head < tail) {
+                int oldest = (int) (head & mask);
+                if ((completed[oldest >>> 6] & (1L << oldest)) == 0L) {
+                    break;
+                }
+                watermark = offsets[oldest];
+                advanced++;
+                head++;
+            }
+        }
+        if (advanced > 0) {
+            acks.ack(watermark, advanced);
+        }
+    }
+
+    private void allocate(int capacity) {
+        offsets = new long[capacity];
+        completed = new long[capacity >>> 6];
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        long[] oldOffsets = offsets;
+        long[] oldCompleted = completed;
+        int oldMask = mask;
+        allocate(oldOffsets.length << 1);
+        for (long sequence = head; sequence < tail; sequence++) {
+            int from = (int) (sequence & oldMask);
+            int to = (int) (sequence & mask);
+            offsets[to] = oldOffsets[from];
+            if ((oldCompleted[from >>> 6] & (1L << from)) != 0L) {
+                completed[to >>> 6] |= 1L << to;
+            }
+        }
+    }
+}
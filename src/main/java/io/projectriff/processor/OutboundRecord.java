@@ -0,0 +1,47 @@
+package io.projectriff.processor;
+
+import com.google.protobuf.ByteString;
+import io.projectriff.invoker.rpc.OutputFrame;
+import io.projectriff.processor.serialization.Message;
+
+/**
+ * A result emitted by the function, already converted to its (serialized) at-rest form, along with the invocation it
+ * pertains to.
+ */
+class OutboundRecord {
+
+    private final int resultIndex;
+
+    private final ByteString message;
+
+    private final InvocationWindow window;
+
+    /**
+     * Creates a record out of a serialized {@link OutputFrame}.
+     */
+    OutboundRecord(ByteString frame, InvocationWindow window) {
+        Transcoding.OutputFrameParts parts = Transcoding.splitOutputFrame(frame);
+        this.resultIndex = parts.getResultIndex();
+        this.message = parts.getMessage();
+        this.window = window;
+        window.retain();
+    }
+
+    int getResultIndex() {
+        return resultIndex;
+    }
+
+    /**
+     * Returns the serialized at-rest {@link Message} to publish.
+     */
+    ByteString getMessage() {
+        return message;
+    }
+
+    /**
+     * Signals that this result has been published to its output stream.
+     */
+    void published() {
+        window.release();
+    }
+}
@@ -0,0 +1,46 @@
+package io.projectriff.processor;
+
+import com.github.bsideup.liiklus.protocol.ReactorLiiklusServiceGrpc;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Everything needed to publish results to one of the output streams, resolved once at startup so that the per-result
+ * path performs no lookup. Routes are indexed by the result index of the function outputs.
+ */
+class OutputRoute {
+
+    private final FullyQualifiedTopic topic;
+
+    private final ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub stub;
+
+    private final Timer latency;
+
+    OutputRoute(FullyQualifiedTopic topic, ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub stub, Timer latency) {
+        this.topic = topic;
+        this.stub = stub;
+        this.latency = latency;
+    }
+
+    FullyQualifiedTopic getTopic() {
+        return topic;
+    }
+
+    ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub getStub() {
+        return stub;
+    }
+
+    /**
+     * Returns the timer recording the latency of publish requests to this output, or {@code null} if metrics are
+     * disabled.
+     */
+    Timer getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return "OutputRoute{" +
+                "topic=" + topic +
+                '}';
+    }
+}
@@ -0,0 +1,63 @@
+package io.projectriff.processor;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.UnicastProcessor;
+import reactor.util.concurrent.Queues;
+
+/**
+ * Buffers the results destined to a single output stream, so that each output is published to independently of the
+ * others.
+ *
+ * <p>The buffer is bounded: offering a result waits (asynchronously) while {@code capacity} results of this output
+ * are buffered or being published, which slows down the invocation the result comes from. Results destined to other
+ * outputs keep being published meanwhile, as long as their own buffer isn't full.</p>
+ */
+class OutputSink {
+
+    private final OutputRoute route;
+
+    private final AsyncPermits buffer;
+
+    private final UnicastProcessor<OutboundRecord> results = UnicastProcessor.create(Queues.<OutboundRecord>unbounded().get());
+
+    private final FluxSink<OutboundRecord> sink = results.sink();
+
+    OutputSink(OutputRoute route, int capacity) {
+        this.route = route;
+        this.buffer = new AsyncPermits(capacity);
+    }
+
+    OutputRoute getRoute() {
+        return route;
+    }
+
+    /**
+     * Adds a result to this output's buffer, returning a {@link Mono} that completes once it has been accepted.
+     */
+    Mono<Void> offer(OutboundRecord record) {
+        return buffer.acquire(1).then(Mono.fromRunnable(() -> sink.next(record)));
+    }
+
+    /**
+     * Returns the buffered results, in the order they were offered. Can only be subscribed to once.
+     */
+    Flux<OutboundRecord> results() {
+        return results;
+    }
+
+    /**
+     * Signals that a result taken from this buffer has been published, making room for another one.
+     */
+    void published() {
+        buffer.release(1);
+    }
+
+    /**
+     * Signals that no more results will be offered.
+     */
+    void complete() {
+        sink.complete();
+    }
+}
@@ -0,0 +1,128 @@
+package io.projectriff.processor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for every stage of the processing pipeline.
+ *
+ * <p>Meters are looked up once per topic (or partition) by the pipeline, and then updated per record. When metrics
+ * are disabled, the backing registry is an empty {@link CompositeMeterRegistry}, whose meters are no-ops, and timers
+ * of per-record operations are {@code null}, so that the pipeline doesn't even read the clock for them.</p>
+ */
+class PipelineMetrics {
+
+    private static final String PREFIX = "riff.processor.";
+
+    private final MeterRegistry registry;
+
+    private final boolean enabled;
+
+    private final DistributionSummary windowRecords;
+
+    private final DistributionSummary windowBytes;
+
+    private final Timer windowDuration;
+
+    private final Timer invocationOpen;
+
+    private final Timer invocationClose;
+
+    private final Timer recordLatency;
+
+    PipelineMetrics(MeterRegistry registry) {
+        this(registry, true);
+    }
+
+    private PipelineMetrics(MeterRegistry registry, boolean enabled) {
+        this.registry = registry;
+        this.enabled = enabled;
+        this.windowRecords = DistributionSummary.builder(PREFIX + "window.records")
+                .description("Number of input records per invocation window")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.windowBytes = DistributionSummary.builder(PREFIX + "window.bytes")
+                .description("Size of the input records per invocation window")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.windowDuration = latency("window.duration", "Time elapsed between the start and the end of invocation windows");
+        this.invocationOpen = latency("invocation.open", "Time to open an invocation stream and send its start frame");
+        this.invocationClose = latency("invocation.close", "Time for an invocation to complete, once its input window has ended");
+        this.recordLatency = latency("record.latency", "Time between an input record joining an invocation and the invocation results being published");
+    }
+
+    static PipelineMetrics disabled() {
+        return new PipelineMetrics(new CompositeMeterRegistry(), false);
+    }
+
+    MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    Counter received(FullyQualifiedTopic topic, int partition) {
+        return Counter.builder(PREFIX + "received")
+                .description("Number of records received")
+                .tag("topic", topic.getTopic())
+                .tag("partition", Integer.toString(partition))
+                .register(registry);
+    }
+
+    /**
+     * Returns the timer of record conversions for the given input, or {@code null} if metrics are disabled.
+     */
+    Timer decode(FullyQualifiedTopic topic) {
+        if (!enabled) {
+            return null;
+        }
+        return Timer.builder(PREFIX + "decode")
+                .description("Time to convert a received record to an invocation signal")
+                .tag("topic", topic.getTopic())
+                .register(registry);
+    }
+
+    /**
+     * Returns the timer of publish requests to the given output, or {@code null} if metrics are disabled.
+     */
+    Timer publish(FullyQualifiedTopic topic) {
+        if (!enabled) {
+            return null;
+        }
+        return Timer.builder(PREFIX + "publish")
+                .description("Time to publish a result to an output stream")
+                .tag("topic", topic.getTopic())
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    Timer ack(String topic) {
+        return Timer.builder(PREFIX + "ack")
+                .description("Time to acknowledge consumed records")
+                .tag("topic", topic)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    void invocationCompleted(InvocationStats stats) {
+        windowRecords.record(stats.getRecords());
+        windowBytes.record(stats.getBytes());
+        windowDuration.record(stats.getWindowDuration().toNanos(), TimeUnit.NANOSECONDS);
+        invocationOpen.record(stats.getSetupTime().toNanos(), TimeUnit.NANOSECONDS);
+        invocationClose.record(stats.getDrainTime().toNanos(), TimeUnit.NANOSECONDS);
+        if (stats.getRecords() > 0) {
+            recordLatency.record(stats.getMeanRecordLatency().toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer latency(String name, String description) {
+        return Timer.builder(PREFIX + name)
+                .description(description)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
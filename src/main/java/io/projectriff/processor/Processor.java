@@ -3,6 +3,9 @@ package io.projectriff.processor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.bsideup.liiklus.protocol.AckRequest;
 import com.github.bsideup.liiklus.protocol.Assignment;
+import com.github.bsideup.liiklus.protocol.GetOffsetsReply;
+import com.github.bsideup.liiklus.protocol.GetOffsetsRequest;
+import com.github.bsideup.liiklus.protocol.PublishReply;
 import com.github.bsideup.liiklus.protocol.PublishRequest;
 import com.github.bsideup.liiklus.protocol.ReactorLiiklusServiceGrpc;
 import com.github.bsideup.liiklus.protocol.ReceiveReply;
@@ -10,20 +13,29 @@ import com.github.bsideup.liiklus.protocol.ReceiveRequest;
 import com.github.bsideup.liiklus.protocol.SubscribeReply;
 import com.github.bsideup.liiklus.protocol.SubscribeRequest;
 import com.google.protobuf.ByteString;
-import com.google.protobuf.Empty;
-import com.google.protobuf.InvalidProtocolBufferException;
 import io.grpc.Channel;
 import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
 import io.projectriff.invoker.rpc.InputFrame;
 import io.projectriff.invoker.rpc.InputSignal;
 import io.projectriff.invoker.rpc.OutputFrame;
-import io.projectriff.invoker.rpc.OutputSignal;
-import io.projectriff.invoker.rpc.ReactorRiffGrpc;
 import io.projectriff.invoker.rpc.StartFrame;
 import io.projectriff.processor.serialization.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Hooks;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.publisher.SignalType;
 
 import java.io.IOException;
 import java.net.ConnectException;
@@ -36,7 +48,12 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -53,6 +70,8 @@ import java.util.stream.Collectors;
  */
 public class Processor {
 
+    private static final Logger logger = LoggerFactory.getLogger(Processor.class);
+
     /**
      * ENV VAR key holding the coordinates of the input streams, as a comma separated list of {@code gatewayAddress:port/streamName}.
      *
@@ -93,81 +112,338 @@ public class Processor {
     private static final String GROUP = "GROUP";
 
     /**
-     * The number of retries when testing http connection to the function.
+     * Optional ENV VAR key holding the version of the consumer group. Offsets are committed per group version, hence a
+     * new version starts over from the auto offset reset position. Defaults to {@code 0}.
      */
-    private static final int NUM_RETRIES = 20;
+    private static final String GROUP_VERSION = "GROUP_VERSION";
+
+    /**
+     * Optional ENV VAR key holding the version of the consumer group used by the previous deployment of the processor.
+     * If set, partitions the current group version has not committed any offset for resume from the offsets committed
+     * by the previous version.
+     */
+    private static final String PREVIOUS_GROUP_VERSION = "PREVIOUS_GROUP_VERSION";
 
     /**
-     * Keeps track of a single gRPC stub per gateway address.
+     * Optional ENV VAR key which, when set to {@code true}, makes the processor replay input streams from their
+     * earliest record (for consumer group versions with no committed offsets) and switches the defaults of the
+     * tuning settings to favour throughput over latency. Replay progress is logged every
+     * {@link #REPLAY_REPORT_INTERVAL}.
      */
-    private final Map<String, ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub> liiklusInstancesPerAddress;
+    private static final String BACKFILL = "BACKFILL";
 
     /**
-     * The ordered input streams for the function, in parsed form.
+     * Optional ENV VAR key holding the number of records requested ahead from the gateway, for each partition.
+     * Defaults to {@value #DEFAULT_RECEIVE_PREFETCH}.
      */
-    private final List<FullyQualifiedTopic> inputs;
+    private static final String RECEIVE_PREFETCH = "RECEIVE_PREFETCH";
 
     /**
-     * The ordered output streams for the function, in parsed form.
+     * Optional ENV VAR key holding the maximum number of bytes of received records that may be in flight in the
+     * processor, from the time they are received until every result derived from them has been published. Unbounded
+     * if not set. For each partition being received, one more record may be held while waiting for the budget.
      */
-    private final List<FullyQualifiedTopic> outputs;
+    private static final String MAX_IN_FLIGHT_BYTES = "MAX_IN_FLIGHT_BYTES";
 
     /**
-     * The ordered logical names for input parameters of the function.
+     * Optional ENV VAR key holding the number of records consumed on a partition after which acknowledgements are
+     * flushed to the gateway. Defaults to {@value #DEFAULT_ACK_BATCH_SIZE}.
      */
-    private final List<String> inputNames;
+    private static final String ACK_BATCH_SIZE = "ACK_BATCH_SIZE";
 
     /**
-     * The ordered logical names for output results of the function.
+     * Optional ENV VAR key holding the interval (in milliseconds) at which pending acknowledgements are flushed to the
+     * gateway. Defaults to {@value #DEFAULT_ACK_INTERVAL_MS}.
      */
-    private final List<String> outputNames;
+    private static final String ACK_INTERVAL_MS = "ACK_INTERVAL_MS";
 
     /**
-     * The ordered list of expected content-types for function results.
+     * Optional ENV VAR key holding the maximum number of publish requests in flight to each output stream.
+     * Defaults to {@value #DEFAULT_PUBLISH_WINDOW}. Concurrent requests may be written by the gateway in any order,
+     * hence results are only written in the order the function emitted them when set to {@code 1}.
      */
-    private final List<String> outputContentTypes;
+    private static final String PUBLISH_WINDOW = "PUBLISH_WINDOW";
+
+    /**
+     * Optional ENV VAR key holding the maximum number of results buffered for each output stream, including those
+     * being published. Defaults to {@value #DEFAULT_OUTPUT_BUFFER}.
+     */
+    private static final String OUTPUT_BUFFER = "OUTPUT_BUFFER";
+
+    /**
+     * Optional ENV VAR key holding the configuration of the strategy used to arrange records in invocation windows.
+     * Defaults to {@value #DEFAULT_WINDOWING}.
+     *
+     * @see WindowingStrategies#parse(String)
+     */
+    private static final String WINDOWING = "WINDOWING";
+
+    /**
+     * Optional ENV VAR key holding the maximum number of function invocations that may be in progress concurrently,
+     * including the one opened ahead of the next window. Defaults to {@value #DEFAULT_INVOCATION_OVERLAP}.
+     */
+    private static final String INVOCATION_OVERLAP = "INVOCATION_OVERLAP";
+
+    /**
+     * Optional ENV VAR key holding the number of concurrent function invocation streams records are spread across,
+     * by partition number, or {@value #PER_PARTITION} for one stream per partition number. Defaults to
+     * {@value #DEFAULT_INVOCATION_CONCURRENCY}, i.e. a single stream multiplexing every input.
+     */
+    private static final String INVOCATION_CONCURRENCY = "INVOCATION_CONCURRENCY";
+
+    /**
+     * Optional ENV VAR key which, when set to {@code true}, enables Reactor's (costly) operator debug mode, which
+     * records the assembly stack trace of every operator. Lightweight checkpoints are always in place otherwise.
+     */
+    private static final String REACTOR_DEBUG = "REACTOR_DEBUG";
+
+    /**
+     * Optional ENV VAR key holding the port of the HTTP endpoint serving metrics in the Prometheus format, on
+     * {@code /metrics}. Metrics are disabled if not set.
+     */
+    private static final String METRICS_PORT = "METRICS_PORT";
+
+    /**
+     * Optional ENV VAR key holding the interval (in milliseconds) at which committed offsets are polled to compute
+     * the uncommitted in-flight records metrics. Defaults to {@value #DEFAULT_LAG_POLL_INTERVAL_MS}. Ignored (and polling disabled)
+     * unless {@link #METRICS_PORT} is set.
+     */
+    private static final String LAG_POLL_INTERVAL_MS = "LAG_POLL_INTERVAL_MS";
+
+    private static final int DEFAULT_ACK_BATCH_SIZE = 500;
+
+    private static final int DEFAULT_ACK_INTERVAL_MS = 1000;
+
+    static final int DEFAULT_PUBLISH_WINDOW = 16;
+
+    private static final int DEFAULT_OUTPUT_BUFFER = 1024;
+
+    private static final String DEFAULT_WINDOWING = "time:60s";
+
+    private static final int DEFAULT_INVOCATION_OVERLAP = 2;
+
+    static final int DEFAULT_INVOCATION_CONCURRENCY = 1;
+
+    private static final int DEFAULT_LAG_POLL_INTERVAL_MS = 10_000;
+
+    private static final int DEFAULT_RECEIVE_PREFETCH = 256;
+
+    private static final int BACKFILL_ACK_BATCH_SIZE = 10_000;
+
+    private static final int BACKFILL_ACK_INTERVAL_MS = 5_000;
+
+    private static final int BACKFILL_PUBLISH_WINDOW = 256;
+
+    private static final String BACKFILL_WINDOWING = "count-or-time:10000,10s";
+
+    private static final int BACKFILL_RECEIVE_PREFETCH = 4096;
+
+    private static final Duration REPLAY_REPORT_INTERVAL = Duration.ofSeconds(10);
+
+    /**
+     * How long to wait for pending acknowledgements to be sent when stopping.
+     */
+    private static final Duration FINAL_ACK_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Special value for the invocation concurrency, meaning one invocation stream per partition number.
+     */
+    static final int PER_PARTITION = 0;
+
+    /**
+     * Marker for an offset that is not known.
+     */
+    private static final long UNKNOWN_OFFSET = -1L;
+
+    /**
+     * Marker for the absence of a previous consumer group version.
+     */
+    static final int NO_PREVIOUS_GROUP_VERSION = -1;
+
+    /**
+     * The number of retries when testing http connection to the function.
+     */
+    private static final int NUM_RETRIES = 20;
 
     /**
      * The consumer group string this process will use to identify itself when reading from the input streams.
      */
     private final String group;
 
+    /**
+     * The version of the consumer group, offsets being tracked separately for each version.
+     */
+    private final int groupVersion;
+
+    /**
+     * The version of the consumer group to seed offsets of the current version from, or
+     * {@link #NO_PREVIOUS_GROUP_VERSION}.
+     */
+    private final int previousGroupVersion;
+
+    /**
+     * Where to start reading partitions from, for a consumer group version that has not committed any offset yet.
+     */
+    private final SubscribeRequest.AutoOffsetReset autoOffsetReset;
+
     /**
      * The RPC stub used to communicate with the function process.
      *
      * @see "riff-rpc.proto for the wire format and service definition"
      */
-    private final ReactorRiffGrpc.ReactorRiffStub riffStub;
+    private final RawRiffStub riffStub;
+
+    /**
+     * The serialized {@link StartFrame} signal, which is the same for every invocation.
+     */
+    private final ByteString startSignal;
+
+    /**
+     * How to receive records from each input stream, in the order of the inputs of the function.
+     */
+    private final InputRoute[] inputRoutes;
+
+    /**
+     * Where to send results for each output stream, indexed by result index.
+     */
+    private final OutputSink[] outputSinks;
+
+    /**
+     * Batches acknowledgements of consumed records, per partition.
+     */
+    private final AckCoalescer acks;
+
+    /**
+     * The maximum number of publish requests in flight to each output stream.
+     */
+    private final int publishWindow;
+
+    /**
+     * Decides when to end an invocation of the function and start a new one.
+     */
+    private final WindowingStrategy windowing;
+
+    /**
+     * The maximum number of function invocations in progress concurrently.
+     */
+    private final int invocationOverlap;
+
+    /**
+     * The number of concurrent invocation streams, or {@link #PER_PARTITION}.
+     */
+    private final int invocationConcurrency;
+
+    /**
+     * Meters for the various stages of the processing pipeline.
+     */
+    private final PipelineMetrics metrics;
+
+    /**
+     * The budget of bytes of records in flight, or {@code null} if unbounded.
+     */
+    private final AsyncPermits inFlightBytes;
+
+    /**
+     * Computes the number of uncommitted in-flight records on input streams.
+     */
+    private final LagMonitor lagMonitor;
+
+    /**
+     * The interval at which committed offsets are polled, zero if disabled.
+     */
+    private final Duration lagPollInterval;
+
+    /**
+     * Tracks how far behind the head of input streams reception is, or {@code null} unless replay progress is
+     * reported (in backfill mode).
+     */
+    private final ReplayProgress replayProgress;
+
+    /**
+     * The interval at which replay progress is logged, zero if disabled.
+     */
+    private final Duration replayReportInterval;
 
     public static void main(String[] args) throws Exception {
 
         checkEnvironmentVariables();
 
-        Hooks.onOperatorDebug();
+        if (booleanEnv(REACTOR_DEBUG)) {
+            Hooks.onOperatorDebug();
+        }
 
         String functionAddress = System.getenv(FUNCTION);
 
-        List<FullyQualifiedTopic> inputAddressableTopics = FullyQualifiedTopic.parseMultiple(System.getenv(INPUTS));
-        List<FullyQualifiedTopic> outputAddressableTopics = FullyQualifiedTopic.parseMultiple(System.getenv(OUTPUTS));
+        List<FullyQualifiedTopic> inputAddressableTopics = FullyQualifiedTopic.parseInputs(System.getenv(INPUTS));
+        List<FullyQualifiedTopic> outputAddressableTopics = FullyQualifiedTopic.parseOutputs(System.getenv(OUTPUTS));
         List<String> inputNames = parseCSV(INPUT_NAMES, inputAddressableTopics.size());
         List<String> outputNames = parseCSV(OUTPUT_NAMES, outputAddressableTopics.size());
         List<String> outputContentTypes = parseContentTypes(System.getenv(OUTPUT_CONTENT_TYPES), outputAddressableTopics.size());
 
+        boolean backfill = booleanEnv(BACKFILL);
+        int groupVersion = nonNegativeIntEnv(GROUP_VERSION, 0);
+        int previousGroupVersion = stringEnv(PREVIOUS_GROUP_VERSION, null) == null
+                ? NO_PREVIOUS_GROUP_VERSION
+                : nonNegativeIntEnv(PREVIOUS_GROUP_VERSION, 0);
+        if (previousGroupVersion == groupVersion) {
+            throw new RuntimeException(String.format("Expected %s to differ from %s, got %d for both", PREVIOUS_GROUP_VERSION, GROUP_VERSION, groupVersion));
+        }
+        if (backfill) {
+            logger.info("Backfill mode: replaying input streams from the earliest record for group {} version {}", System.getenv(GROUP), groupVersion);
+            if (groupVersion == 0) {
+                logger.warn("Backfill mode with the default group version: partitions the group already committed offsets for won't be replayed. Set {} to a new version", GROUP_VERSION);
+            }
+        }
+
+        PipelineMetrics metrics = PipelineMetrics.disabled();
+        PrometheusMeterRegistry registry = null;
+        int metricsPort = nonNegativeIntEnv(METRICS_PORT, 0);
+        Duration lagPollInterval = Duration.ofMillis(positiveIntEnv(LAG_POLL_INTERVAL_MS, DEFAULT_LAG_POLL_INTERVAL_MS));
+        if (metricsPort > 0) {
+            registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+            new JvmMemoryMetrics().bindTo(registry);
+            new JvmGcMetrics().bindTo(registry);
+            new JvmThreadMetrics().bindTo(registry);
+            metrics = new PipelineMetrics(registry);
+        }
+
         assertHttpConnectivity(functionAddress);
         Channel fnChannel = NettyChannelBuilder.forTarget(functionAddress)
                 .usePlaintext()
                 .build();
 
-        Processor processor = new Processor(
-                inputAddressableTopics,
-                outputAddressableTopics,
-                inputNames,
-                outputNames,
-                outputContentTypes,
-                System.getenv(GROUP),
-                ReactorRiffGrpc.newReactorStub(fnChannel));
+        Processor processor = Processor.builder()
+                .inputs(inputAddressableTopics, inputNames)
+                .outputs(outputAddressableTopics, outputNames, outputContentTypes)
+                .group(System.getenv(GROUP), groupVersion, previousGroupVersion)
+                .autoOffsetReset(backfill ? SubscribeRequest.AutoOffsetReset.EARLIEST : SubscribeRequest.AutoOffsetReset.LATEST)
+                .receivePrefetch(positiveIntEnv(RECEIVE_PREFETCH, backfill ? BACKFILL_RECEIVE_PREFETCH : DEFAULT_RECEIVE_PREFETCH))
+                .gatewayChannels(address -> NettyChannelBuilder.forTarget(address)
+                        .usePlaintext()
+                        .build())
+                .riffStub(new RawRiffStub(fnChannel))
+                .ackBatchSize(positiveIntEnv(ACK_BATCH_SIZE, backfill ? BACKFILL_ACK_BATCH_SIZE : DEFAULT_ACK_BATCH_SIZE))
+                .ackInterval(Duration.ofMillis(positiveIntEnv(ACK_INTERVAL_MS, backfill ? BACKFILL_ACK_INTERVAL_MS : DEFAULT_ACK_INTERVAL_MS)))
+                .publishWindow(positiveIntEnv(PUBLISH_WINDOW, backfill ? BACKFILL_PUBLISH_WINDOW : DEFAULT_PUBLISH_WINDOW))
+                .outputBuffer(positiveIntEnv(OUTPUT_BUFFER, DEFAULT_OUTPUT_BUFFER))
+                .maxInFlightBytes(nonNegativeLongEnv(MAX_IN_FLIGHT_BYTES, 0L))
+                .windowing(WindowingStrategies.parse(stringEnv(WINDOWING, backfill ? BACKFILL_WINDOWING : DEFAULT_WINDOWING)))
+                .invocationOverlap(positiveIntEnv(INVOCATION_OVERLAP, DEFAULT_INVOCATION_OVERLAP))
+                .invocationConcurrency(nonNegativeIntEnv(INVOCATION_CONCURRENCY, DEFAULT_INVOCATION_CONCURRENCY))
+                .metrics(metrics)
+                .lagPollInterval(metricsPort > 0 ? lagPollInterval : Duration.ZERO)
+                .replayReportInterval(backfill ? REPLAY_REPORT_INTERVAL : Duration.ZERO)
+                .build();
 
-        processor.run();
+        // the endpoint's (non daemon) thread would otherwise keep the JVM alive once processing is over
+        MetricsEndpoint metricsEndpoint = registry == null ? null : MetricsEndpoint.start(registry, metricsPort);
+        try {
+            processor.run();
+        } finally {
+            if (metricsEndpoint != null) {
+                metricsEndpoint.stop();
+            }
+        }
 
     }
 
@@ -194,145 +470,506 @@ public class Processor {
         }
     }
 
-    private Processor(List<FullyQualifiedTopic> inputs,
-                      List<FullyQualifiedTopic> outputs,
-                      List<String> inputNames,
-                      List<String> outputNames,
-                      List<String> outputContentTypes,
-                      String group,
-                      ReactorRiffGrpc.ReactorRiffStub riffStub) {
+    private Processor(Builder settings) {
+        Set<FullyQualifiedTopic> allGateways = new HashSet<>(settings.inputs);
+        allGateways.addAll(settings.outputs);
 
-        this.inputs = inputs;
-        this.outputs = outputs;
-        this.inputNames = inputNames;
-        this.outputNames = outputNames;
-        Set<FullyQualifiedTopic> allGateways = new HashSet<>(inputs);
-        allGateways.addAll(outputs);
+        Map<String, ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub> liiklusInstancesPerAddress = indexByAddress(allGateways, settings.gatewayChannels);
+        this.riffStub = settings.riffStub;
+        this.startSignal = InputSignal.newBuilder()
+                .setStart(StartFrame.newBuilder()
+                        .addAllExpectedContentTypes(settings.outputContentTypes)
+                        .addAllInputNames(settings.inputNames)
+                        .addAllOutputNames(settings.outputNames)
+                        .build())
+                .build()
+                .toByteString();
+        this.group = settings.group;
+        this.groupVersion = settings.groupVersion;
+        this.previousGroupVersion = settings.previousGroupVersion;
+        this.autoOffsetReset = settings.autoOffsetReset;
+        this.metrics = settings.metrics;
+        this.inFlightBytes = settings.maxInFlightBytes > 0L ? new AsyncPermits(settings.maxInFlightBytes) : null;
+        this.inputRoutes = new InputRoute[settings.inputs.size()];
+        for (int i = 0; i < inputRoutes.length; i++) {
+            FullyQualifiedTopic input = settings.inputs.get(i);
+            inputRoutes[i] = new InputRoute(i, input, liiklusInstancesPerAddress.get(input.getGatewayAddress()), settings.receivePrefetch);
+        }
+        this.outputSinks = new OutputSink[settings.outputs.size()];
+        for (int i = 0; i < outputSinks.length; i++) {
+            FullyQualifiedTopic output = settings.outputs.get(i);
+            outputSinks[i] = new OutputSink(new OutputRoute(output, liiklusInstancesPerAddress.get(output.getGatewayAddress()), metrics.publish(output)), settings.outputBuffer);
+        }
+        this.acks = new AckCoalescer(group, groupVersion, settings.ackBatchSize, settings.ackInterval, metrics);
+        this.lagMonitor = new LagMonitor(group, groupVersion, Arrays.stream(inputRoutes)
+                .collect(Collectors.toMap(InputRoute::getTopic, InputRoute::getStub, (a, b) -> a)),
+                metrics.getRegistry());
+        this.lagPollInterval = settings.lagPollInterval;
+        this.replayProgress = settings.replayReportInterval.isZero() ? null : new ReplayProgress(group, metrics.getRegistry());
+        this.replayReportInterval = settings.replayReportInterval;
+        this.publishWindow = settings.publishWindow;
+        this.windowing = settings.windowing;
+        this.invocationOverlap = settings.invocationOverlap;
+        this.invocationConcurrency = settings.invocationConcurrency;
+    }
 
-        this.liiklusInstancesPerAddress = indexByAddress(allGateways);
-        this.outputContentTypes = outputContentTypes;
-        this.riffStub = riffStub;
-        this.group = group;
+    /**
+     * Returns a builder of processors, whose tuning settings start with their default values.
+     */
+    static Builder builder() {
+        return new Builder();
     }
 
     public void run() {
-        Flux.fromIterable(inputs)
-                .flatMap(fullyQualifiedTopic -> {
-                    ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub inputLiiklus = liiklusInstancesPerAddress.get(fullyQualifiedTopic.getGatewayAddress());
-                    return inputLiiklus.subscribe(subscribeRequestForInput(fullyQualifiedTopic.getTopic()))
+        process().block();
+    }
+
+    /**
+     * Returns the whole processing pipeline, which starts receiving records when subscribed to. Pending
+     * acknowledgements are flushed when it terminates (waiting for the gateway to reply), or when it is cancelled.
+     */
+    Mono<Void> process() {
+        return Mono.defer(this::pipeline);
+    }
+
+    private Mono<Void> pipeline() {
+        Disposable.Composite background = Disposables.composite(acks.start());
+        if (!lagPollInterval.isZero()) {
+            background.add(lagMonitor.start(lagPollInterval));
+        }
+        if (replayProgress != null) {
+            background.add(replayProgress.start(replayReportInterval));
+        }
+        Flux<Flux<InboundRecord>> assignments = Flux.fromArray(inputRoutes)
+                .flatMap(route -> {
+                    FullyQualifiedTopic fullyQualifiedTopic = route.getTopic();
+                    ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub inputLiiklus = route.getStub();
+                    return seedOffsets(fullyQualifiedTopic, inputLiiklus)
+                            .thenMany(inputLiiklus.subscribe(subscribeRequestForInput(fullyQualifiedTopic.getTopic())))
+                            .checkpoint("subscribe " + fullyQualifiedTopic)
                             .filter(SubscribeReply::hasAssignment)
                             .map(SubscribeReply::getAssignment)
-                            .flatMap(
-                                    assignment -> inputLiiklus
-                                            .receive(receiveRequestForAssignment(assignment))
-                                            .delayUntil(receiveReply -> ack(fullyQualifiedTopic, inputLiiklus, receiveReply, assignment))
-                            )
-                            .map(receiveReply -> toRiffSignal(receiveReply, fullyQualifiedTopic));
+                            .map(assignment -> receive(route, assignment));
+                }, Math.max(1, inputRoutes.length));
+        Flux<InboundRecord> received = assignments.flatMap(assignment -> assignment, Integer.MAX_VALUE);
+        Flux<Flux<InboundRecord>> lanes = invocationConcurrency == 1
+                ? Flux.just(received)
+                : received.groupBy(InboundRecord::getLane).map(lane -> lane);
+        Mono<Void> routing = lanes
+                .flatMap(lane -> lane
+                                .transform(this::riffWindowing)
+                                .checkpoint("window")
+                                .transform(this::invocations)
+                                .flatMapSequential(invocation -> invocation, Integer.MAX_VALUE)
+                                .concatMap(result -> outputSink(result.getResultIndex()).offer(result)),
+                        Integer.MAX_VALUE)
+                .doFinally(signal -> Arrays.stream(outputSinks).forEach(OutputSink::complete))
+                .then();
+        Mono<Void> publishing = Flux.fromArray(outputSinks)
+                .flatMap(this::publish, Math.max(1, outputSinks.length))
+                .then();
+        Mono<Void> stopping = Mono.fromRunnable(background::dispose)
+                .then(Mono.defer(this::flushAcks));
+        return Mono.when(routing, publishing)
+                .onErrorResume(error -> stopping.then(Mono.error(error)))
+                .then(stopping)
+                .doOnCancel(() -> {
+                    background.dispose();
+                    acks.flushAll().subscribe();
+                });
+    }
+
+    /**
+     * Sends pending acknowledgements one last time, waiting at most {@link #FINAL_ACK_TIMEOUT} for the gateway to
+     * reply, so that stopping cleanly doesn't replay the records processed since the previous flush.
+     */
+    private Mono<Void> flushAcks() {
+        return acks.flushAll()
+                .timeout(FINAL_ACK_TIMEOUT)
+                .onErrorResume(TimeoutException.class, e -> {
+                    logger.warn("Timed out after {} waiting for final acknowledgements of group {}", FINAL_ACK_TIMEOUT, group);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Receives the records of a partition assigned to this processor, converted to invocation signals, once the
+     * maximum number of partitions received from concurrently for its input allows it.
+     */
+    private Flux<InboundRecord> receive(InputRoute route, Assignment assignment) {
+        AsyncPermits assignments = route.getAssignments();
+        return assignments.acquire(1)
+                .thenMany(Flux.defer(() -> receivePartition(route, assignment)
+                        .doFinally(signal -> assignments.release(1))));
+    }
+
+    /**
+     * Receives the records of a partition, resuming right after the last record known to have been processed.
+     */
+    private Flux<InboundRecord> receivePartition(InputRoute route, Assignment assignment) {
+        FullyQualifiedTopic fullyQualifiedTopic = route.getTopic();
+        ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub inputLiiklus = route.getStub();
+        AckCoalescer.PartitionAcks partitionAcks = acks.forPartition(fullyQualifiedTopic, inputLiiklus, assignment.getPartition());
+        OffsetTracker tracker = new OffsetTracker(partitionAcks);
+        int lane = laneFor(assignment);
+        Counter received = metrics.received(fullyQualifiedTopic, assignment.getPartition());
+        LagMonitor.PartitionLag lag = lagMonitor.forPartition(fullyQualifiedTopic, assignment.getPartition());
+        Timer decode = metrics.decode(fullyQualifiedTopic);
+        ReplayProgress.PartitionProgress progress = replayProgress == null ? null : replayProgress.forPartition(fullyQualifiedTopic, assignment.getPartition());
+        return lastKnownOffset(fullyQualifiedTopic, inputLiiklus, assignment, partitionAcks)
+                .flatMapMany(lastKnownOffset -> route.getReceiver().receive(receiveRequestForAssignment(assignment, lastKnownOffset))
+                        .transform(replies -> skipProcessed(replies, lastKnownOffset, tracker)))
+                .transform(this::reserveInFlightBytes)
+                .limitRate(route.getPrefetch(), route.getLowTide())
+                .checkpoint("receive " + fullyQualifiedTopic + " partition " + assignment.getPartition())
+                .doOnNext(receiveReply -> {
+                    ReceiveReply.Record record = receiveReply.getRecord();
+                    received.increment();
+                    lag.received(record.getOffset());
+                    if (progress != null) {
+                        progress.received(record);
+                    }
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Received {} for group {}: offset={}, part={}", fullyQualifiedTopic.getTopic(), group, record.getOffset(), assignment.getPartition());
+                    }
                 })
-                .transform(this::riffWindowing)
-                .map(this::invoke)
-                .concatMap(flux ->
-                        flux.concatMap(m -> {
-                            OutputFrame next = m.getData();
-                            FullyQualifiedTopic output = outputs.get(next.getResultIndex());
-                            ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub outputLiiklus = liiklusInstancesPerAddress.get(output.getGatewayAddress());
-                            return outputLiiklus.publish(createPublishRequest(next, output.getTopic()));
-                        })
-                )
-                .blockLast();
+                .map(receiveReply -> {
+                    ByteString signal = toRiffSignal(receiveReply, route, decode);
+                    return new InboundRecord(signal, tracker, receiveReply.getRecord().getOffset(), lane, inFlightBytes, receiveReply.getRecord().getValue().size());
+                })
+                .checkpoint("decode " + fullyQualifiedTopic);
+    }
+
+    /**
+     * Drops the records at or below the last known offset, which the gateway delivers again (merely flagging them as
+     * replayed) although they have already been processed. They are still marked as complete, so that the
+     * acknowledged watermark moves past them.
+     */
+    private static Flux<ReceiveReply> skipProcessed(Flux<ReceiveReply> replies, long lastKnownOffset, OffsetTracker tracker) {
+        if (lastKnownOffset == UNKNOWN_OFFSET) {
+            return replies;
+        }
+        return replies.filter(reply -> {
+            long offset = reply.getRecord().getOffset();
+            if (offset > lastKnownOffset) {
+                return true;
+            }
+            tracker.complete(tracker.track(offset));
+            return false;
+        });
+    }
+
+    /**
+     * Takes the size of each received record from the budget of bytes in flight as soon as gRPC hands it over,
+     * waiting for previously received records to be processed if needed. The bytes are given back by
+     * {@link InboundRecord#processed()} (or {@link InboundRecord#discarded()}).
+     *
+     * <p>Records are asked for one at a time, so that records prefetched further down the pipeline have all been
+     * taken from the budget: the only record of a partition held outside of it is the one waiting for the budget.</p>
+     */
+    private Flux<ReceiveReply> reserveInFlightBytes(Flux<ReceiveReply> replies) {
+        if (inFlightBytes == null) {
+            return replies;
+        }
+        return replies.concatMap(reply -> {
+            int bytes = reply.getRecord().getValue().size();
+            return inFlightBytes.tryAcquire(bytes) ? Mono.just(reply) : inFlightBytes.acquire(bytes).thenReturn(reply);
+        }, 1);
     }
 
-    private Mono<Empty> ack(FullyQualifiedTopic topic, ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub stub, ReceiveReply receiveReply, Assignment assignment) {
-        System.out.format("ACKing %s for group %s: offset=%d, part=%d%n", topic.getTopic(), this.group, receiveReply.getRecord().getOffset(), assignment.getPartition());
-        return stub.ack(AckRequest.newBuilder()
-                .setGroup(this.group)
-                .setOffset(receiveReply.getRecord().getOffset())
-                .setPartition(assignment.getPartition())
-                .setTopic(topic.getTopic())
-                .build());
+    /**
+     * Returns the offset of the last record processed on the given partition, as the highest of the offset committed
+     * for the consumer group and of the offset acknowledged by this process (which may not have been committed yet,
+     * e.g. when a partition is re-assigned to this process). Returns {@link #UNKNOWN_OFFSET} if unknown.
+     */
+    private Mono<Long> lastKnownOffset(FullyQualifiedTopic fullyQualifiedTopic, ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub inputLiiklus, Assignment assignment, AckCoalescer.PartitionAcks partitionAcks) {
+        return committedOffsets(fullyQualifiedTopic, inputLiiklus, groupVersion)
+                .map(offsets -> offsets.getOrDefault(assignment.getPartition(), UNKNOWN_OFFSET))
+                .onErrorResume(error -> {
+                    logger.warn("Failed to get committed offsets of {} for group {}, resuming from the gateway's own position", fullyQualifiedTopic, group, error);
+                    return Mono.just(UNKNOWN_OFFSET);
+                })
+                .defaultIfEmpty(UNKNOWN_OFFSET)
+                .map(committed -> Math.max(committed, partitionAcks.lastAcknowledged()));
+    }
+
+    /**
+     * Copies the offsets committed by the previous version of the consumer group on the given input stream to the
+     * current version, if the latter has not committed any offset yet. This lets a new deployment take over from the
+     * previous one where it left off, instead of either replaying the whole stream or skipping to its end.
+     */
+    private Mono<Void> seedOffsets(FullyQualifiedTopic fullyQualifiedTopic, ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub inputLiiklus) {
+        if (previousGroupVersion == NO_PREVIOUS_GROUP_VERSION) {
+            return Mono.empty();
+        }
+        return committedOffsets(fullyQualifiedTopic, inputLiiklus, groupVersion)
+                .filter(Map::isEmpty)
+                .flatMap(none -> committedOffsets(fullyQualifiedTopic, inputLiiklus, previousGroupVersion))
+                .flatMapMany(previous -> Flux.fromIterable(previous.entrySet()))
+                .doOnNext(offset -> logger.info("Seeding offset of {} partition {} for group {} version {} from version {}: offset={}",
+                        fullyQualifiedTopic.getTopic(), offset.getKey(), group, groupVersion, previousGroupVersion, offset.getValue()))
+                .flatMap(offset -> inputLiiklus.ack(AckRequest.newBuilder()
+                        .setTopic(fullyQualifiedTopic.getTopic())
+                        .setGroup(group)
+                        .setGroupVersion(groupVersion)
+                        .setPartition(offset.getKey())
+                        .setOffset(offset.getValue())
+                        .build()))
+                .checkpoint("seed offsets " + fullyQualifiedTopic)
+                .then();
+    }
+
+    private Mono<Map<Integer, Long>> committedOffsets(FullyQualifiedTopic fullyQualifiedTopic, ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub inputLiiklus, int version) {
+        return inputLiiklus.getOffsets(GetOffsetsRequest.newBuilder()
+                .setTopic(fullyQualifiedTopic.getTopic())
+                .setGroup(group)
+                .setGroupVersion(version)
+                .build())
+                .map(GetOffsetsReply::getOffsetsMap);
+    }
+
+    /**
+     * Returns the index of the invocation stream that records of the given partition should be sent to. Records of a
+     * given partition always go to the same stream, hence keeping their relative order. Partitions are spread by
+     * number only, so that records of co-partitioned inputs still meet in the same invocations.
+     */
+    private int laneFor(Assignment assignment) {
+        if (invocationConcurrency == PER_PARTITION) {
+            return assignment.getPartition();
+        }
+        return Math.floorMod(assignment.getPartition(), invocationConcurrency);
+    }
+
+    /**
+     * Publishes the results buffered for a single output stream, pipelining up to {@link #publishWindow} requests.
+     * Requests are issued in the order the function emitted results, but the gateway may write concurrent requests in
+     * any order: results carry no key, so no partition ordering can be preserved across them unless the window is
+     * {@code 1}. Each output is published to independently, so that a slow output doesn't hold back the others.
+     */
+    private Flux<PublishReply> publish(OutputSink sink) {
+        OutputRoute output = sink.getRoute();
+        ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub outputLiiklus = output.getStub();
+        Timer latency = output.getLatency();
+        String topic = output.getTopic().getTopic();
+        return sink.results().flatMap(
+                m -> publish(outputLiiklus, createPublishRequest(m, topic), latency)
+                        .doOnSuccess(reply -> {
+                            m.published();
+                            sink.published();
+                        }),
+                publishWindow)
+                .checkpoint("publish " + output.getTopic());
+    }
+
+    /**
+     * Sends a publish request, recording its latency unless the given timer is {@code null}.
+     */
+    private static Mono<PublishReply> publish(ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub outputLiiklus, PublishRequest request, Timer latency) {
+        if (latency == null) {
+            return outputLiiklus.publish(request);
+        }
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return outputLiiklus.publish(request)
+                    .doOnSuccess(reply -> latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private OutputSink outputSink(int resultIndex) {
+        if (resultIndex < 0 || resultIndex >= outputSinks.length) {
+            throw new RuntimeException(String.format("Function emitted a result with index %d, expected one of %d output(s)", resultIndex, outputSinks.length));
+        }
+        return outputSinks[resultIndex];
     }
 
     private static Map<String, ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub> indexByAddress(
-            Collection<FullyQualifiedTopic> fullyQualifiedTopics) {
+            Collection<FullyQualifiedTopic> fullyQualifiedTopics, Function<String, Channel> gatewayChannels) {
         return fullyQualifiedTopics.stream()
                 .map(FullyQualifiedTopic::getGatewayAddress)
                 .distinct()
                 .collect(Collectors.toMap(
                         address -> address,
-                        address -> ReactorLiiklusServiceGrpc.newReactorStub(
-                                NettyChannelBuilder.forTarget(address)
-                                        .usePlaintext()
-                                        .build())
+                        address -> ReactorLiiklusServiceGrpc.newReactorStub(gatewayChannels.apply(address))
                         )
                 )
                 ;
     }
 
-    private Flux<OutputSignal> invoke(Flux<InputFrame> in) {
-        InputSignal start = InputSignal.newBuilder()
-                .setStart(StartFrame.newBuilder()
-                        .addAllExpectedContentTypes(this.outputContentTypes)
-                        .addAllInputNames(this.inputNames)
-                        .addAllOutputNames(this.outputNames)
-                        .build())
-                .build();
+    /**
+     * Turns windows of records into invocations of the function, each one being the flow of results of the
+     * invocation.
+     *
+     * <p>Invocations are emitted one step ahead of their window: the invocation for the next window is emitted (and
+     * hence its RPC stream opened and its start frame sent, provided {@link #invocationOverlap} allows it) as soon as
+     * the current window starts. That way, window boundaries don't wait for a new RPC stream to be set up.</p>
+     *
+     * <p>Invocations may be subscribed to eagerly, as each one waits for one of {@link #invocationOverlap} permits
+     * before opening its RPC stream, and gives it back once done. Demand for windows is hence never withheld (which
+     * window operators don't support), and a window whose invocation can't start yet buffers its records.</p>
+     */
+    private Flux<Flux<OutboundRecord>> invocations(Flux<Flux<InboundRecord>> windows) {
+        return Flux.defer(() -> {
+            AsyncPermits overlap = new AsyncPermits(invocationOverlap);
+            Disposable.Composite inputs = Disposables.composite();
+            AtomicReference<MonoProcessor<Flux<InboundRecord>>> standby = new AtomicReference<>(MonoProcessor.create());
+            return Flux.just(invoke(standby.get(), overlap, inputs))
+                    .concatWith(windows.map(window -> {
+                        MonoProcessor<Flux<InboundRecord>> next = MonoProcessor.create();
+                        standby.getAndSet(next).onNext(window);
+                        return invoke(next, overlap, inputs);
+                    }))
+                    .doFinally(signal -> {
+                        standby.get().onNext(Flux.empty());
+                        if (signal != SignalType.ON_COMPLETE) {
+                            inputs.dispose();
+                        }
+                    });
+        });
+    }
 
-        return riffStub.invoke(Flux.concat(
-                Flux.just(start), //
-                in.map(frame -> InputSignal.newBuilder().setData(frame).build())));
+    /**
+     * Invokes the function with the records of a window once one of the given permits is available, giving it back
+     * when the invocation terminates.
+     */
+    private Flux<OutboundRecord> invoke(Mono<Flux<InboundRecord>> in, AsyncPermits overlap, Disposable.Composite inputs) {
+        return overlap.acquire(1)
+                .thenMany(Flux.defer(() -> invoke(in, inputs)
+                        .doFinally(signal -> overlap.release(1))));
     }
 
     /**
-     * This converts an RPC representation of an {@link OutputFrame} to an at-rest {@link Message}, and creates a publish request for it.
+     * Invokes the function with the records of a window, once available. Records are acknowledged only after every
+     * result of the invocation has been published, which allows receiving, invoking and publishing to be fully
+     * pipelined without risking data loss.
+     *
+     * <p>The window is drained until its end even if the function stops reading its input early (e.g. when it
+     * completes its output first), so that every record of the window is accounted for: those the function did not
+     * read are considered processed along with the others. An invocation that fails or is cancelled is abandoned,
+     * leaving its records to be received again.</p>
+     *
+     * @param inputs the subscriptions to windows of the invocation stream, to cancel if it is itself cancelled
      */
-    private PublishRequest createPublishRequest(OutputFrame next, String topic) {
-        Message msg = Message.newBuilder()
-                .setPayload(next.getPayload())
-                .setContentType(next.getContentType())
-                .putAllHeaders(next.getHeadersMap())
-                .build();
+    private Flux<OutboundRecord> invoke(Mono<Flux<InboundRecord>> in, Disposable.Composite inputs) {
+        InvocationWindow window = new InvocationWindow(this::invocationCompleted);
+        Disposable.Swap input = Disposables.swap();
+        Flux<ByteString> data = Flux.create(sink -> {
+            long[] unread = {0L};
+            inputs.add(input);
+            input.update(in
+                    .flatMapMany(records -> {
+                        window.inputStarted();
+                        return records;
+                    })
+                    .subscribe(record -> {
+                                window.add(record);
+                                if (sink.isCancelled()) {
+                                    unread[0]++;
+                                } else {
+                                    sink.next(record.getSignal());
+                                }
+                            },
+                            error -> {
+                                inputs.remove(input);
+                                window.abandon();
+                                sink.error(error);
+                            },
+                            () -> {
+                                inputs.remove(input);
+                                if (unread[0] > 0L) {
+                                    logger.warn("Function stopped reading the input of an invocation of group {} early, {} record(s) of the window were not sent to it", group, unread[0]);
+                                }
+                                window.inputComplete();
+                                sink.complete();
+                            }));
+        });
+
+        Flux<ByteString> signals = Flux.concat(
+                Flux.just(startSignal).doOnNext(start -> window.started()), //
+                data);
+
+        // the RPC stream may start sending signals before its subscriber is notified, hence not using doOnSubscribe
+        return Flux.defer(() -> {
+                    window.opened();
+                    return riffStub.invoke(signals);
+                })
+                .checkpoint("invoke")
+                .map(signal -> new OutboundRecord(Transcoding.outputFrame(signal), window))
+                .doFinally(signal -> {
+                    if (signal == SignalType.ON_COMPLETE) {
+                        window.outputComplete();
+                    } else {
+                        inputs.remove(input);
+                        input.dispose();
+                        window.abandon();
+                    }
+                });
+    }
 
+    private void invocationCompleted(InvocationStats stats) {
+        windowing.invocationCompleted(stats);
+        metrics.invocationCompleted(stats);
+    }
+
+    /**
+     * This creates a publish request for a function result, already converted from its RPC representation of an
+     * {@link OutputFrame} to an at-rest {@link Message} at the byte level.
+     *
+     * @see Transcoding
+     */
+    private PublishRequest createPublishRequest(OutboundRecord next, String topic) {
         return PublishRequest.newBuilder()
-                .setValue(msg.toByteString())
+                .setValue(next.getMessage())
                 .setTopic(topic)
                 .build();
     }
 
-    private static ReceiveRequest receiveRequestForAssignment(Assignment assignment) {
-        return ReceiveRequest.newBuilder().setAssignment(assignment).build();
+    /**
+     * Creates the request to receive the records of an assignment. The last known offset only lets the gateway flag
+     * replayed records: it can't tell an offset of {@code 0} from an unset one, so skipping processed records is left
+     * to {@link #skipProcessed(Flux, long, OffsetTracker)}.
+     */
+    private static ReceiveRequest receiveRequestForAssignment(Assignment assignment, long lastKnownOffset) {
+        ReceiveRequest.Builder request = ReceiveRequest.newBuilder().setAssignment(assignment);
+        if (lastKnownOffset != UNKNOWN_OFFSET) {
+            request.setLastKnownOffset(lastKnownOffset);
+        }
+        return request.build();
     }
 
-    private <T> Flux<Flux<T>> riffWindowing(Flux<T> linear) {
-        return linear.window(Duration.ofSeconds(60));
+    private Flux<Flux<InboundRecord>> riffWindowing(Flux<InboundRecord> linear) {
+        return windowing.window(linear, InboundRecord::size);
     }
 
     /**
-     * This converts a liiklus received message (representing an at-rest riff {@link Message}) into an RPC {@link InputFrame}.
+     * This converts a liiklus received message (representing an at-rest riff {@link Message}) into a serialized RPC
+     * {@link InputSignal} carrying an {@link InputFrame}. The message bytes are spliced as is, without being parsed.
+     *
+     * @see Transcoding
      */
-    private InputFrame toRiffSignal(ReceiveReply receiveReply, FullyQualifiedTopic fullyQualifiedTopic) {
-        int inputIndex = inputs.indexOf(fullyQualifiedTopic);
-        if (inputIndex == -1) {
-            throw new RuntimeException("Unknown topic: " + fullyQualifiedTopic);
-        }
-        ByteString bytes = receiveReply.getRecord().getValue();
-        try {
-            Message message = Message.parseFrom(bytes);
-            return InputFrame.newBuilder()
-                    .setPayload(message.getPayload())
-                    .setContentType(message.getContentType())
-                    .setArgIndex(inputIndex)
-                    .build();
-        } catch (InvalidProtocolBufferException e) {
-            throw new RuntimeException(e);
-        }
+    private ByteString toRiffSignal(ReceiveReply receiveReply, InputRoute route) {
+        return Transcoding.inputSignal(receiveReply.getRecord().getValue(), route.getArgIndexSuffix());
+    }
 
+    /**
+     * Converts a received record to an invocation signal, recording the time it took unless the given timer is
+     * {@code null}.
+     */
+    private ByteString toRiffSignal(ReceiveReply receiveReply, InputRoute route, Timer decode) {
+        if (decode == null) {
+            return toRiffSignal(receiveReply, route);
+        }
+        long start = System.nanoTime();
+        ByteString signal = toRiffSignal(receiveReply, route);
+        decode.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return signal;
     }
 
     private SubscribeRequest subscribeRequestForInput(String topic) {
         return SubscribeRequest.newBuilder()
                 .setTopic(topic)
                 .setGroup(group)
-                .setAutoOffsetReset(SubscribeRequest.AutoOffsetReset.LATEST)
+                .setGroupVersion(groupVersion)
+                .setAutoOffsetReset(autoOffsetReset)
                 .build();
     }
 
@@ -352,6 +989,63 @@ public class Processor {
         }
     }
 
+    private static String stringEnv(String envVarName, String defaultValue) {
+        String value = System.getenv(envVarName);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    private static boolean booleanEnv(String envVarName) {
+        return Boolean.parseBoolean(stringEnv(envVarName, "false"));
+    }
+
+    static int intEnv(String envVarName, int defaultValue) {
+        String value = System.getenv(envVarName);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new RuntimeException(String.format("Expected an integer value in variable %s, got \"%s\"", envVarName, value), e);
+        }
+    }
+
+    private static int positiveIntEnv(String envVarName, int defaultValue) {
+        int value = intEnv(envVarName, defaultValue);
+        if (value <= 0) {
+            throw new RuntimeException(String.format("Expected a positive integer value in variable %s, got %d", envVarName, value));
+        }
+        return value;
+    }
+
+    private static int nonNegativeIntEnv(String envVarName, int defaultValue) {
+        int value = intEnv(envVarName, defaultValue);
+        if (value < 0) {
+            throw new RuntimeException(String.format("Expected a non-negative integer value in variable %s, got %d", envVarName, value));
+        }
+        return value;
+    }
+
+    private static long nonNegativeLongEnv(String envVarName, long defaultValue) {
+        long value = longEnv(envVarName, defaultValue);
+        if (value < 0L) {
+            throw new RuntimeException(String.format("Expected a non-negative integer value in variable %s, got %d", envVarName, value));
+        }
+        return value;
+    }
+
+    private static long longEnv(String envVarName, long defaultValue) {
+        String value = System.getenv(envVarName);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new RuntimeException(String.format("Expected an integer value in variable %s, got \"%s\"", envVarName, value), e);
+        }
+    }
+
     private static List<String> parseCSV(String envVarName, int expectedSize) {
         String[] split = System.getenv(envVarName).split(",");
         if (split.length != expectedSize) {
@@ -360,4 +1054,215 @@ public class Processor {
         }
         return Arrays.asList(split);
     }
-}
\ No newline at end of file
+
+    /**
+     * Collects the settings of a {@link Processor}. The streams, consumer group, gateway channels and function stub
+     * are required, other settings default to the values used when the matching environment variables are not set,
+     * with lag polling disabled.
+     */
+    static final class Builder {
+
+        private List<FullyQualifiedTopic> inputs;
+
+        private List<String> inputNames;
+
+        private List<FullyQualifiedTopic> outputs;
+
+        private List<String> outputNames;
+
+        private List<String> outputContentTypes;
+
+        private String group;
+
+        private int groupVersion = 0;
+
+        private int previousGroupVersion = NO_PREVIOUS_GROUP_VERSION;
+
+        private SubscribeRequest.AutoOffsetReset autoOffsetReset = SubscribeRequest.AutoOffsetReset.LATEST;
+
+        private int receivePrefetch = DEFAULT_RECEIVE_PREFETCH;
+
+        private Function<String, Channel> gatewayChannels;
+
+        private RawRiffStub riffStub;
+
+        private int ackBatchSize = DEFAULT_ACK_BATCH_SIZE;
+
+        private Duration ackInterval = Duration.ofMillis(DEFAULT_ACK_INTERVAL_MS);
+
+        private int publishWindow = DEFAULT_PUBLISH_WINDOW;
+
+        private int outputBuffer = DEFAULT_OUTPUT_BUFFER;
+
+        private long maxInFlightBytes = 0L;
+
+        private WindowingStrategy windowing = WindowingStrategies.parse(DEFAULT_WINDOWING);
+
+        private int invocationOverlap = DEFAULT_INVOCATION_OVERLAP;
+
+        private int invocationConcurrency = DEFAULT_INVOCATION_CONCURRENCY;
+
+        private PipelineMetrics metrics = PipelineMetrics.disabled();
+
+        private Duration lagPollInterval = Duration.ZERO;
+
+        private Duration replayReportInterval = Duration.ZERO;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the ordered input streams of the function, and the logical names of the matching input parameters.
+         */
+        Builder inputs(List<FullyQualifiedTopic> inputs, List<String> inputNames) {
+            this.inputs = inputs;
+            this.inputNames = inputNames;
+            return this;
+        }
+
+        /**
+         * Sets the ordered output streams of the function, and the logical names and expected content-types of the
+         * matching results.
+         */
+        Builder outputs(List<FullyQualifiedTopic> outputs, List<String> outputNames, List<String> outputContentTypes) {
+            this.outputs = outputs;
+            this.outputNames = outputNames;
+            this.outputContentTypes = outputContentTypes;
+            return this;
+        }
+
+        /**
+         * Sets the consumer group used to read input streams, its version, and the version to seed offsets from, or
+         * {@link #NO_PREVIOUS_GROUP_VERSION}.
+         */
+        Builder group(String group, int groupVersion, int previousGroupVersion) {
+            this.group = group;
+            this.groupVersion = groupVersion;
+            this.previousGroupVersion = previousGroupVersion;
+            return this;
+        }
+
+        Builder autoOffsetReset(SubscribeRequest.AutoOffsetReset autoOffsetReset) {
+            this.autoOffsetReset = autoOffsetReset;
+            return this;
+        }
+
+        Builder receivePrefetch(int receivePrefetch) {
+            this.receivePrefetch = receivePrefetch;
+            return this;
+        }
+
+        /**
+         * Sets how to open a channel to a gateway, given its address.
+         */
+        Builder gatewayChannels(Function<String, Channel> gatewayChannels) {
+            this.gatewayChannels = gatewayChannels;
+            return this;
+        }
+
+        Builder riffStub(RawRiffStub riffStub) {
+            this.riffStub = riffStub;
+            return this;
+        }
+
+        Builder ackBatchSize(int ackBatchSize) {
+            this.ackBatchSize = ackBatchSize;
+            return this;
+        }
+
+        Builder ackInterval(Duration ackInterval) {
+            this.ackInterval = ackInterval;
+            return this;
+        }
+
+        Builder publishWindow(int publishWindow) {
+            this.publishWindow = publishWindow;
+            return this;
+        }
+
+        Builder outputBuffer(int outputBuffer) {
+            this.outputBuffer = outputBuffer;
+            return this;
+        }
+
+        /**
+         * Sets the budget of bytes of records in flight, {@code 0} for unbounded.
+         */
+        Builder maxInFlightBytes(long maxInFlightBytes) {
+            this.maxInFlightBytes = maxInFlightBytes;
+            return this;
+        }
+
+        Builder windowing(WindowingStrategy windowing) {
+            this.windowing = windowing;
+            return this;
+        }
+
+        Builder invocationOverlap(int invocationOverlap) {
+            this.invocationOverlap = invocationOverlap;
+            return this;
+        }
+
+        /**
+         * Sets the number of concurrent invocation streams, or {@link #PER_PARTITION}.
+         */
+        Builder invocationConcurrency(int invocationConcurrency) {
+            this.invocationConcurrency = invocationConcurrency;
+            return this;
+        }
+
+        Builder metrics(PipelineMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Sets the interval at which committed offsets are polled, zero to disable polling.
+         */
+        Builder lagPollInterval(Duration lagPollInterval) {
+            this.lagPollInterval = lagPollInterval;
+            return this;
+        }
+
+        /**
+         * Sets the interval at which replay progress is logged, zero to not track replay progress at all.
+         */
+        Builder replayReportInterval(Duration replayReportInterval) {
+            this.replayReportInterval = replayReportInterval;
+            return this;
+        }
+
+        Processor build() {
+            Objects.requireNonNull(inputs, "inputs");
+            Objects.requireNonNull(outputs, "outputs");
+            Objects.requireNonNull(group, "group");
+            Objects.requireNonNull(gatewayChannels, "gatewayChannels");
+            Objects.requireNonNull(riffStub, "riffStub");
+            checkInFlightBudget();
+            return new Processor(this);
+        }
+
+        /**
+         * Rejects a budget of bytes in flight that windows may never end within. Each invocation stream fills its own
+         * windows, hence the budget is shared by as many windows as there are streams.
+         */
+        private void checkInFlightBudget() {
+            long required = windowing.requiredInFlightBytes();
+            if (maxInFlightBytes <= 0L || required == 0L) {
+                return;
+            }
+            if (required == Long.MAX_VALUE) {
+                throw new RuntimeException(String.format("Expected a windowing strategy that ends windows within %s=%d, got %s. "
+                        + "Use time or bytes based windowing, or unset %s", MAX_IN_FLIGHT_BYTES, maxInFlightBytes, windowing, MAX_IN_FLIGHT_BYTES));
+            }
+            if (invocationConcurrency == PER_PARTITION) {
+                throw new RuntimeException(String.format("Expected a fixed %s with %s windowing and %s set, got %d (one stream per partition)",
+                        INVOCATION_CONCURRENCY, windowing, MAX_IN_FLIGHT_BYTES, invocationConcurrency));
+            }
+            if (required > maxInFlightBytes / invocationConcurrency) {
+                throw new RuntimeException(String.format("Expected %s to be at least %d for %s windowing across %d invocation stream(s), got %d",
+                        MAX_IN_FLIGHT_BYTES, required * invocationConcurrency, windowing, invocationConcurrency, maxInFlightBytes));
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package io.projectriff.processor;
+
+import com.google.protobuf.ByteString;
+import com.salesforce.reactorgrpc.stub.ClientCalls;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.MethodDescriptor;
+import io.projectriff.invoker.rpc.InputSignal;
+import io.projectriff.invoker.rpc.OutputSignal;
+import io.projectriff.invoker.rpc.RiffGrpc;
+import reactor.core.publisher.Flux;
+
+/**
+ * A variant of the generated {@code ReactorRiffStub} that sends {@link InputSignal}s in already serialized form, and
+ * hands back {@link OutputSignal}s in raw, serialized form.
+ *
+ * @see Transcoding
+ */
+class RawRiffStub {
+
+    private static final MethodDescriptor<ByteString, ByteString> INVOKE_METHOD = RiffGrpc.getInvokeMethod()
+            .toBuilder(Transcoding.RAW_MARSHALLER, Transcoding.RAW_MARSHALLER)
+            .build();
+
+    private final Channel channel;
+
+    RawRiffStub(Channel channel) {
+        this.channel = channel;
+    }
+
+    Flux<ByteString> invoke(Flux<ByteString> request) {
+        return ClientCalls.manyToMany(
+                request,
+                responseObserver -> io.grpc.stub.ClientCalls.asyncBidiStreamingCall(channel.newCall(INVOKE_METHOD, CallOptions.DEFAULT), responseObserver));
+    }
+}
@@ -0,0 +1,64 @@
+package io.projectriff.processor;
+
+import com.github.bsideup.liiklus.protocol.LiiklusServiceGrpc;
+import com.github.bsideup.liiklus.protocol.ReceiveReply;
+import com.github.bsideup.liiklus.protocol.ReceiveRequest;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.ClientResponseObserver;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A variant of the {@code receive} call of the generated {@code ReactorLiiklusServiceStub} that only asks gRPC for
+ * records as they are requested downstream. The generated stub requests a fixed batch of records ahead of demand, which
+ * would be held by the processor without being accounted for.
+ */
+class ReceiveStub {
+
+    private final Channel channel;
+
+    ReceiveStub(Channel channel) {
+        this.channel = channel;
+    }
+
+    Flux<ReceiveReply> receive(ReceiveRequest request) {
+        return Flux.create(sink -> {
+            ClientCall<ReceiveRequest, ReceiveReply> call = channel.newCall(LiiklusServiceGrpc.getReceiveMethod(), CallOptions.DEFAULT);
+            ClientCalls.asyncServerStreamingCall(call, request, new ClientResponseObserver<ReceiveRequest, ReceiveReply>() {
+                @Override
+                public void beforeStart(ClientCallStreamObserver<ReceiveRequest> requestStream) {
+                    requestStream.disableAutoInboundFlowControl();
+                }
+
+                @Override
+                public void onNext(ReceiveReply reply) {
+                    sink.next(reply);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    sink.error(error);
+                }
+
+                @Override
+                public void onCompleted() {
+                    sink.complete();
+                }
+            });
+            // starting the call already requested the first record
+            AtomicBoolean first = new AtomicBoolean(true);
+            sink.onRequest(n -> {
+                long records = first.getAndSet(false) ? n - 1 : n;
+                if (records > 0) {
+                    call.request((int) Math.min(records, Integer.MAX_VALUE));
+                }
+            });
+            sink.onCancel(() -> call.cancel("Receiving cancelled", null));
+        });
+    }
+}
@@ -0,0 +1,112 @@
+package io.projectriff.processor;
+
+import com.github.bsideup.liiklus.protocol.ReceiveReply;
+import com.google.protobuf.Timestamp;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks how far reception of each input partition is behind the head of the stream when replaying history (see the
+ * {@code BACKFILL} mode of {@link Processor}), based on the timestamp of the latest record received, and exports it
+ * as a gauge.
+ *
+ * <p>It also periodically logs, for every partition, the offset reached, the time reception is behind and the rate at
+ * which records are being caught up on.</p>
+ */
+class ReplayProgress {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplayProgress.class);
+
+    private static final String DELAY = "riff.processor.replay.delay";
+
+    private final String group;
+
+    private final MeterRegistry registry;
+
+    private final ConcurrentMap<TopicPartition, PartitionProgress> partitions = new ConcurrentHashMap<>();
+
+    ReplayProgress(String group, MeterRegistry registry) {
+        this.group = group;
+        this.registry = registry;
+    }
+
+    /**
+     * Returns the (unique) handle used to report records received on the given partition of a topic.
+     */
+    PartitionProgress forPartition(FullyQualifiedTopic topic, int partition) {
+        return partitions.computeIfAbsent(new TopicPartition(topic, partition), k -> {
+            PartitionProgress progress = new PartitionProgress();
+            Gauge.builder(DELAY, progress, PartitionProgress::delaySeconds)
+                    .description("Time elapsed since the latest received record was written to the input stream")
+                    .baseUnit("seconds")
+                    .tag("topic", topic.getTopic())
+                    .tag("partition", Integer.toString(partition))
+                    .register(registry);
+            return progress;
+        });
+    }
+
+    /**
+     * Starts logging the progress made on each partition at the given interval.
+     */
+    Disposable start(Duration interval) {
+        return Flux.interval(interval, interval)
+                .doOnNext(tick -> partitions.forEach((key, progress) -> progress.report(key, interval)))
+                .subscribe();
+    }
+
+    /**
+     * Holds the reception progress of a single partition.
+     */
+    class PartitionProgress {
+
+        private static final long NONE = -1L;
+
+        private final LongAdder records = new LongAdder();
+
+        private final LongAdder replayed = new LongAdder();
+
+        private volatile long offset = NONE;
+
+        private volatile long timestampMillis = NONE;
+
+        void received(ReceiveReply.Record record) {
+            records.increment();
+            if (record.getReplay()) {
+                replayed.increment();
+            }
+            offset = record.getOffset();
+            if (record.hasTimestamp()) {
+                Timestamp timestamp = record.getTimestamp();
+                timestampMillis = timestamp.getSeconds() * 1000L + timestamp.getNanos() / 1_000_000;
+            }
+        }
+
+        private double delaySeconds() {
+            long timestampMillis = this.timestampMillis;
+            return timestampMillis == NONE ? Double.NaN : Math.max(0L, System.currentTimeMillis() - timestampMillis) / 1000.0;
+        }
+
+        private void report(TopicPartition key, Duration interval) {
+            long count = records.sumThenReset();
+            long replayedCount = replayed.sumThenReset();
+            if (count == 0L) {
+                return;
+            }
+            double delay = delaySeconds();
+            logger.info("Replaying {} partition {} for group {}: at offset {}, {}s behind, {} records/s ({} replayed)",
+                    key.getTopic().getTopic(), key.getPartition(), group, offset,
+                    Double.isNaN(delay) ? "?" : String.format("%.1f", delay),
+                    count * 1000L / Math.max(1L, interval.toMillis()), replayedCount);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package io.projectriff.processor;
+
+import java.util.Objects;
+
+/**
+ * Identifies a single partition of a {@link FullyQualifiedTopic}.
+ */
+class TopicPartition {
+
+    private final FullyQualifiedTopic topic;
+
+    private final int partition;
+
+    TopicPartition(FullyQualifiedTopic topic, int partition) {
+        this.topic = topic;
+        this.partition = partition;
+    }
+
+    FullyQualifiedTopic getTopic() {
+        return topic;
+    }
+
+    int getPartition() {
+        return partition;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TopicPartition that = (TopicPartition) o;
+        return partition == that.partition &&
+                Objects.equals(topic, that.topic);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(topic, partition);
+    }
+
+    @Override
+    public String toString() {
+        return "TopicPartition{" +
+                "topic=" + topic +
+                ", partition=" + partition +
+                '}';
+    }
+}
@@ -0,0 +1,260 @@
+package io.projectriff.processor;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.projectriff.invoker.rpc.InputFrame;
+import io.projectriff.invoker.rpc.InputSignal;
+import io.projectriff.invoker.rpc.OutputFrame;
+import io.projectriff.invoker.rpc.OutputSignal;
+import io.projectriff.processor.serialization.Message;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Byte level transcoding between the riff "at rest" format (see {@code riff-serialization.proto}) and the riff RPC
+ * wire format (see {@code riff-rpc.proto}).
+ *
+ * <p>Fields 1 to 3 ({@code payload}, {@code contentType} and {@code headers}) of {@link Message}, {@link InputFrame}
+ * and {@link OutputFrame} share the same numbers and types. Hence the serialized form of an {@link InputFrame} is the
+ * serialized form of the at-rest {@link Message}, followed by its {@code argIndex} field. Conversely, the serialized
+ * form of a {@link Message} is that of an {@link OutputFrame}, minus its {@code resultIndex} field. This allows
+ * signals to be spliced together from (and split into) the bytes exchanged with the gateway, without parsing nor
+ * re-encoding messages.</p>
+ */
+final class Transcoding {
+
+    private static final int WIRETYPE_VARINT = 0;
+
+    private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+
+    private static final int INPUT_SIGNAL_DATA_TAG = tag(InputSignal.DATA_FIELD_NUMBER, WIRETYPE_LENGTH_DELIMITED);
+
+    private static final int INPUT_FRAME_ARG_INDEX_TAG = tag(InputFrame.ARGINDEX_FIELD_NUMBER, WIRETYPE_VARINT);
+
+    private static final int OUTPUT_SIGNAL_DATA_TAG = tag(OutputSignal.DATA_FIELD_NUMBER, WIRETYPE_LENGTH_DELIMITED);
+
+    private static final int OUTPUT_FRAME_RESULT_INDEX_TAG = tag(OutputFrame.RESULTINDEX_FIELD_NUMBER, WIRETYPE_VARINT);
+
+    /**
+     * A gRPC marshaller for messages that have already been serialized.
+     */
+    static final MethodDescriptor.Marshaller<ByteString> RAW_MARSHALLER = new MethodDescriptor.Marshaller<ByteString>() {
+        @Override
+        public InputStream stream(ByteString value) {
+            return new ByteStringInputStream(value);
+        }
+
+        @Override
+        public ByteString parse(InputStream stream) {
+            try {
+                return readFully(stream);
+            } catch (IOException e) {
+                throw Status.INTERNAL.withDescription("Failed to read message").withCause(e).asRuntimeException();
+            }
+        }
+    };
+
+    private Transcoding() {
+    }
+
+    /**
+     * Returns the bytes to append to a serialized {@link Message} to turn it into an {@link InputFrame} for the given
+     * argument index. The field is written even for the default index {@code 0}, as the last occurrence of a field
+     * wins: this overrides any {@code argIndex} field the stored message bytes may (unexpectedly) carry.
+     */
+    static ByteString argIndexSuffix(int argIndex) {
+        byte[] suffix = new byte[CodedOutputStream.computeUInt32SizeNoTag(INPUT_FRAME_ARG_INDEX_TAG)
+                + CodedOutputStream.computeInt32SizeNoTag(argIndex)];
+        CodedOutputStream out = CodedOutputStream.newInstance(suffix);
+        try {
+            out.writeUInt32NoTag(INPUT_FRAME_ARG_INDEX_TAG);
+            out.writeInt32NoTag(argIndex);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return UnsafeByteOperations.unsafeWrap(suffix);
+    }
+
+    /**
+     * Creates the serialized form of a data {@link InputSignal}, out of a serialized at-rest {@link Message} and the
+     * suffix computed by {@link #argIndexSuffix(int)}.
+     */
+    static ByteString inputSignal(ByteString message, ByteString argIndexSuffix) {
+        int frameLength = message.size() + argIndexSuffix.size();
+        byte[] header = new byte[CodedOutputStream.computeUInt32SizeNoTag(INPUT_SIGNAL_DATA_TAG)
+                + CodedOutputStream.computeUInt32SizeNoTag(frameLength)];
+        CodedOutputStream out = CodedOutputStream.newInstance(header);
+        try {
+            out.writeUInt32NoTag(INPUT_SIGNAL_DATA_TAG);
+            out.writeUInt32NoTag(frameLength);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return UnsafeByteOperations.unsafeWrap(header).concat(message).concat(argIndexSuffix);
+    }
+
+    /**
+     * Extracts the serialized {@link OutputFrame} out of a serialized {@link OutputSignal}. The returned bytes share
+     * the storage of the signal.
+     */
+    static ByteString outputFrame(ByteString outputSignal) {
+        CodedInputStream in = outputSignal.newCodedInput();
+        ByteString frame = ByteString.EMPTY; // absent frame is equivalent to the default instance
+        try {
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                if (tag == OUTPUT_SIGNAL_DATA_TAG) {
+                    int length = in.readRawVarint32();
+                    int start = in.getTotalBytesRead();
+                    frame = outputSignal.substring(start, start + length);
+                    in.skipRawBytes(length);
+                } else {
+                    in.skipField(tag);
+                }
+            }
+            return frame;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Splits a serialized {@link OutputFrame} into its {@code resultIndex} field and a serialized at-rest
+     * {@link Message}, obtained by filtering out that field, in a single pass. The message bytes share the storage of
+     * the frame.
+     */
+    static OutputFrameParts splitOutputFrame(ByteString outputFrame) {
+        CodedInputStream in = outputFrame.newCodedInput();
+        int resultIndex = 0;
+        ByteString message = ByteString.EMPTY;
+        int segmentStart = 0;
+        try {
+            while (true) {
+                int fieldStart = in.getTotalBytesRead();
+                int tag = in.readTag();
+                if (tag == 0) {
+                    break;
+                }
+                if (tag == OUTPUT_FRAME_RESULT_INDEX_TAG) {
+                    resultIndex = in.readInt32();
+                } else {
+                    in.skipField(tag);
+                }
+                if (WireFormat.getTagFieldNumber(tag) == OutputFrame.RESULTINDEX_FIELD_NUMBER) {
+                    message = message.concat(outputFrame.substring(segmentStart, fieldStart));
+                    segmentStart = in.getTotalBytesRead();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new OutputFrameParts(resultIndex, segmentStart == 0 ? outputFrame : message.concat(outputFrame.substring(segmentStart)));
+    }
+
+    private static int tag(int fieldNumber, int wireType) {
+        return (fieldNumber << 3) | wireType;
+    }
+
+    private static ByteString readFully(InputStream stream) throws IOException {
+        if (!(stream instanceof KnownLength)) {
+            return ByteString.readFrom(stream);
+        }
+        byte[] bytes = new byte[stream.available()];
+        int read = 0;
+        while (read < bytes.length) {
+            int n = stream.read(bytes, read, bytes.length - read);
+            if (n == -1) {
+                break;
+            }
+            read += n;
+        }
+        return UnsafeByteOperations.unsafeWrap(bytes, 0, read);
+    }
+
+    /**
+     * Exposes a {@link ByteString} to gRPC, which drains it straight to the transport buffers.
+     */
+    private static final class ByteStringInputStream extends InputStream implements KnownLength, Drainable {
+
+        private ByteString bytes;
+
+        private InputStream partial;
+
+        private ByteStringInputStream(ByteString bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int drainTo(OutputStream target) throws IOException {
+            if (partial != null) {
+                int drained = 0;
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = partial.read(buffer)) != -1) {
+                    target.write(buffer, 0, n);
+                    drained += n;
+                }
+                return drained;
+            }
+            int size = bytes.size();
+            bytes.writeTo(target);
+            bytes = ByteString.EMPTY;
+            return size;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return partial != null ? partial.available() : bytes.size();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return partial().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return partial().read(b, off, len);
+        }
+
+        private InputStream partial() {
+            if (partial == null) {
+                partial = bytes.newInput();
+            }
+            return partial;
+        }
+    }
+
+    /**
+     * The {@code resultIndex} field of a serialized {@link OutputFrame}, and the serialized at-rest {@link Message}
+     * it carries.
+     */
+    static final class OutputFrameParts {
+
+        private final int resultIndex;
+
+        private final ByteString message;
+
+        private OutputFrameParts(int resultIndex, ByteString message) {
+            this.resultIndex = resultIndex;
+            this.message = message;
+        }
+
+        int getResultIndex() {
+            return resultIndex;
+        }
+
+        ByteString getMessage() {
+            return message;
+        }
+    }
+}
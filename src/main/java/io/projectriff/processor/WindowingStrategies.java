@@ -0,0 +1,210 @@
+package io.projectriff.processor;
+
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.function.ToIntFunction;
+
+/**
+ * Built-in {@link WindowingStrategy} implementations, and parsing of their textual configuration.
+ *
+ * <p>Supported configurations are</p>
+ * <ul>
+ *     <li>{@code time:<duration>}, e.g. {@code time:60s}: windows span a fixed amount of wallclock time,</li>
+ *     <li>{@code count:<n>}, e.g. {@code count:1000}: windows hold a fixed number of records,</li>
+ *     <li>{@code bytes:<n>}, e.g. {@code bytes:1048576}: windows end once they hold at least that many bytes,</li>
+ *     <li>{@code count-or-time:<n>,<duration>}, e.g. {@code count-or-time:1000,5s}: windows end once they hold
+ *     {@code n} records, or after {@code duration}, whichever comes first,</li>
+ *     <li>{@code adaptive:<latency>[,<min>,<max>]}, e.g. {@code adaptive:500ms,100ms,1m}: windows span an amount of
+ *     time that adapts to the observed cost of invocations, targeting the given mean record latency. Window length
+ *     is kept between {@code min} (defaults to {@value #DEFAULT_ADAPTIVE_MIN}) and {@code max} (defaults to
+ *     {@value #DEFAULT_ADAPTIVE_MAX}).</li>
+ * </ul>
+ * <p>Durations are expressed as an integer followed by one of the {@code ms}, {@code s}, {@code m} or {@code h}
+ * units. Counts, byte sizes and durations must be positive.</p>
+ */
+public final class WindowingStrategies {
+
+    private static final String DEFAULT_ADAPTIVE_MIN = "100ms";
+
+    private static final String DEFAULT_ADAPTIVE_MAX = "60s";
+
+    private WindowingStrategies() {
+    }
+
+    public static WindowingStrategy time(Duration duration) {
+        return new WindowingStrategy() {
+            @Override
+            public <T> Flux<Flux<T>> window(Flux<T> records, ToIntFunction<? super T> sizeOf) {
+                return records.window(duration);
+            }
+
+            @Override
+            public String toString() {
+                return "time:" + duration;
+            }
+        };
+    }
+
+    public static WindowingStrategy count(int count) {
+        return new WindowingStrategy() {
+            @Override
+            public <T> Flux<Flux<T>> window(Flux<T> records, ToIntFunction<? super T> sizeOf) {
+                return records.window(count);
+            }
+
+            @Override
+            public long requiredInFlightBytes() {
+                return Long.MAX_VALUE;
+            }
+
+            @Override
+            public String toString() {
+                return "count:" + count;
+            }
+        };
+    }
+
+    public static WindowingStrategy bytes(long bytes) {
+        return new WindowingStrategy() {
+            @Override
+            public <T> Flux<Flux<T>> window(Flux<T> records, ToIntFunction<? super T> sizeOf) {
+                return Flux.defer(() -> {
+                    long[] accumulated = {0L};
+                    return records.windowUntil(record -> {
+                        accumulated[0] += sizeOf.applyAsInt(record);
+                        if (accumulated[0] >= bytes) {
+                            accumulated[0] = 0L;
+                            return true;
+                        }
+                        return false;
+                    });
+                });
+            }
+
+            @Override
+            public long requiredInFlightBytes() {
+                return bytes;
+            }
+
+            @Override
+            public String toString() {
+                return "bytes:" + bytes;
+            }
+        };
+    }
+
+    public static WindowingStrategy countOrTime(int count, Duration duration) {
+        return new WindowingStrategy() {
+            @Override
+            public <T> Flux<Flux<T>> window(Flux<T> records, ToIntFunction<? super T> sizeOf) {
+                return records.windowTimeout(count, duration);
+            }
+
+            @Override
+            public String toString() {
+                return "count-or-time:" + count + "," + duration;
+            }
+        };
+    }
+
+    public static WindowingStrategy adaptive(Duration latencyObjective, Duration minLength, Duration maxLength) {
+        if (minLength.compareTo(maxLength) > 0) {
+            throw new IllegalArgumentException(String.format("Minimum window length %s is greater than maximum %s", minLength, maxLength));
+        }
+        return new AdaptiveWindowing(latencyObjective, minLength, maxLength);
+    }
+
+    /**
+     * Parses a textual windowing configuration, as described in the {@link WindowingStrategies class documentation}.
+     *
+     * @throws IllegalArgumentException if the configuration is invalid, with a message naming the {@code WINDOWING}
+     *                                  variable it is read from
+     */
+    public static WindowingStrategy parse(String configuration) {
+        try {
+            return parseStrategy(configuration);
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            throw new IllegalArgumentException(String.format("Invalid WINDOWING configuration \"%s\": %s", configuration, e.getMessage()), e);
+        }
+    }
+
+    private static WindowingStrategy parseStrategy(String configuration) {
+        int colonIndex = configuration.indexOf(':');
+        if (colonIndex == -1) {
+            throw new IllegalArgumentException("Expected a windowing configuration of the form <kind>:<parameters>, got " + configuration);
+        }
+        String kind = configuration.substring(0, colonIndex).trim();
+        String[] parameters = configuration.substring(1 + colonIndex).split(",");
+        switch (kind) {
+            case "time":
+                return time(positiveDuration(parameters[0]));
+            case "count":
+                return count(positiveCount(parameters[0]));
+            case "bytes":
+                return bytes(positiveBytes(parameters[0]));
+            case "count-or-time":
+                if (parameters.length != 2) {
+                    throw new IllegalArgumentException("Expected count-or-time:<n>,<duration>, got " + configuration);
+                }
+                return countOrTime(positiveCount(parameters[0]), positiveDuration(parameters[1]));
+            case "adaptive":
+                if (parameters.length != 1 && parameters.length != 3) {
+                    throw new IllegalArgumentException("Expected adaptive:<latency>[,<min>,<max>], got " + configuration);
+                }
+                return adaptive(positiveDuration(parameters[0]),
+                        positiveDuration(parameters.length == 3 ? parameters[1] : DEFAULT_ADAPTIVE_MIN),
+                        positiveDuration(parameters.length == 3 ? parameters[2] : DEFAULT_ADAPTIVE_MAX));
+            default:
+                throw new IllegalArgumentException("Unknown windowing strategy: " + kind);
+        }
+    }
+
+    private static int positiveCount(String value) {
+        int count = Integer.parseInt(value.trim());
+        if (count <= 0) {
+            throw new IllegalArgumentException("Expected a positive number of records, got " + count);
+        }
+        return count;
+    }
+
+    private static long positiveBytes(String value) {
+        long bytes = Long.parseLong(value.trim());
+        if (bytes <= 0L) {
+            throw new IllegalArgumentException("Expected a positive number of bytes, got " + bytes);
+        }
+        return bytes;
+    }
+
+    private static Duration positiveDuration(String value) {
+        Duration duration = parseDuration(value);
+        if (duration.isZero()) {
+            throw new IllegalArgumentException("Expected a positive duration, got " + value.trim());
+        }
+        return duration;
+    }
+
+    static Duration parseDuration(String value) {
+        String duration = value.trim();
+        int unitIndex = 0;
+        while (unitIndex < duration.length() && Character.isDigit(duration.charAt(unitIndex))) {
+            unitIndex++;
+        }
+        if (unitIndex == 0) {
+            throw new IllegalArgumentException("Expected a duration such as 500ms, 10s, 1m or 1h, got " + value);
+        }
+        long amount = Long.parseLong(duration.substring(0, unitIndex));
+        switch (duration.substring(unitIndex)) {
+            case "ms":
+                return Duration.ofMillis(amount);
+            case "s":
+                return Duration.ofSeconds(amount);
+            case "m":
+                return Duration.ofMinutes(amount);
+            case "h":
+                return Duration.ofHours(amount);
+            default:
+                throw new IllegalArgumentException("Expected a duration such as 500ms, 10s, 1m or 1h, got " + value);
+        }
+    }
+}
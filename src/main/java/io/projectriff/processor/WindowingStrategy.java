@@ -0,0 +1,40 @@
+package io.projectriff.processor;
+
+import reactor.core.publisher.Flux;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Decides how records are arranged in invocation windows, that is when the current invocation of the function should
+ * end and a new one should start.
+ *
+ * @see WindowingStrategies for built-in implementations
+ */
+public interface WindowingStrategy {
+
+    /**
+     * Splits the given records into consecutive windows.
+     *
+     * @param records the linear flow of records, as received from the input streams
+     * @param sizeOf  a function returning the size, in bytes, of a record
+     */
+    <T> Flux<Flux<T>> window(Flux<T> records, ToIntFunction<? super T> sizeOf);
+
+    /**
+     * Notifies this strategy that an invocation of the function is complete, allowing adaptive strategies to tune
+     * subsequent windows. Does nothing by default.
+     */
+    default void invocationCompleted(InvocationStats stats) {
+    }
+
+    /**
+     * Returns the number of bytes of records a window may need to hold before it ends, {@code 0} if windows end
+     * whatever they hold (e.g. after some time), or {@link Long#MAX_VALUE} if no number of bytes is enough. Records
+     * are only released once their window is over, hence a budget of bytes in flight lower than this may never let a
+     * window end. Returns {@code 0} by default.
+     */
+    default long requiredInFlightBytes() {
+        return 0L;
+    }
+
+}
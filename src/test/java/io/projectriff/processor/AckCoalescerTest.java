@@ -0,0 +1,163 @@
+package io.projectriff.processor;
+
+import com.github.bsideup.liiklus.protocol.AckRequest;
+import com.github.bsideup.liiklus.protocol.ReactorLiiklusServiceGrpc;
+import com.google.protobuf.Empty;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AckCoalescerTest {
+
+    private static final FullyQualifiedTopic TOPIC = new FullyQualifiedTopic("gateway:6565", "topic");
+
+    private final Gateway service = new Gateway();
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    private ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub stub;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        String name = "gateway-" + UUID.randomUUID();
+        server = InProcessServerBuilder.forName(name).addService(service).build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        stub = ReactorLiiklusServiceGrpc.newReactorStub(channel);
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    void sendsASingleAckPerBatch() throws InterruptedException {
+        AckCoalescer.PartitionAcks acks = new AckCoalescer("group", 3, 3, Duration.ofHours(1), PipelineMetrics.disabled())
+                .forPartition(TOPIC, stub, 2);
+
+        acks.ack(0L, 1);
+        acks.ack(1L, 1);
+        assertThat(service.requests.poll(100, TimeUnit.MILLISECONDS)).isNull();
+        acks.ack(2L, 1);
+
+        assertThat(service.requests.poll(5, TimeUnit.SECONDS)).isEqualTo(AckRequest.newBuilder()
+                .setTopic("topic")
+                .setGroup("group")
+                .setGroupVersion(3)
+                .setPartition(2)
+                .setOffset(2L)
+                .build());
+        assertThat(service.requests.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void flushesPendingAcksPeriodically() throws InterruptedException {
+        AckCoalescer coalescer = new AckCoalescer("group", 0, Integer.MAX_VALUE, Duration.ofMillis(50), PipelineMetrics.disabled());
+        AckCoalescer.PartitionAcks acks = coalescer.forPartition(TOPIC, stub, 0);
+        Disposable flushing = coalescer.start();
+        try {
+            acks.ack(5L, 6);
+
+            assertThat(service.requests.poll(5, TimeUnit.SECONDS).getOffset()).isEqualTo(5L);
+            assertThat(service.requests.poll(200, TimeUnit.MILLISECONDS)).as("nothing new to acknowledge").isNull();
+        } finally {
+            flushing.dispose();
+        }
+    }
+
+    @Test
+    void keepsASingleAckInFlightAndSendsTheLatestOffsetNext() throws InterruptedException {
+        MonoProcessor<Empty> firstReply = MonoProcessor.create();
+        service.replies.add(firstReply);
+        AckCoalescer.PartitionAcks acks = new AckCoalescer("group", 0, 1, Duration.ofHours(1), PipelineMetrics.disabled())
+                .forPartition(TOPIC, stub, 0);
+
+        acks.ack(0L, 1);
+        assertThat(service.requests.poll(5, TimeUnit.SECONDS).getOffset()).isEqualTo(0L);
+        acks.ack(1L, 1);
+        acks.ack(2L, 1);
+        assertThat(service.requests.poll(100, TimeUnit.MILLISECONDS)).as("ack in flight").isNull();
+
+        firstReply.onNext(Empty.getDefaultInstance());
+
+        assertThat(service.requests.poll(5, TimeUnit.SECONDS).getOffset()).isEqualTo(2L);
+        assertThat(service.requests.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void retriesFailedAcksOnTheNextFlush() throws InterruptedException {
+        service.replies.add(Mono.error(Status.UNAVAILABLE.asRuntimeException()));
+        AckCoalescer.PartitionAcks acks = new AckCoalescer("group", 0, Integer.MAX_VALUE, Duration.ofHours(1), PipelineMetrics.disabled())
+                .forPartition(TOPIC, stub, 0);
+        acks.ack(7L, 8);
+
+        acks.flush().block(Duration.ofSeconds(5));
+        assertThat(service.requests.poll(5, TimeUnit.SECONDS).getOffset()).isEqualTo(7L);
+
+        acks.flush().block(Duration.ofSeconds(5));
+        assertThat(service.requests.poll(5, TimeUnit.SECONDS).getOffset()).as("retried").isEqualTo(7L);
+
+        acks.flush().block(Duration.ofSeconds(5));
+        assertThat(service.requests.poll(100, TimeUnit.MILLISECONDS)).as("already acknowledged").isNull();
+    }
+
+    @Test
+    void finalFlushCompletesOnceTheGatewayHasReplied() throws Exception {
+        MonoProcessor<Empty> reply = MonoProcessor.create();
+        service.replies.add(reply);
+        AckCoalescer coalescer = new AckCoalescer("group", 0, Integer.MAX_VALUE, Duration.ofHours(1), PipelineMetrics.disabled());
+        coalescer.forPartition(TOPIC, stub, 0).ack(3L, 4);
+        coalescer.forPartition(new FullyQualifiedTopic("gateway:6565", "other"), stub, 1).ack(9L, 10);
+
+        CompletableFuture<Void> flushed = coalescer.flushAll().toFuture();
+
+        assertThat(service.requests.poll(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(service.requests.poll(5, TimeUnit.SECONDS)).isNotNull();
+        Thread.sleep(100);
+        assertThat(flushed).isNotDone();
+        reply.onNext(Empty.getDefaultInstance());
+        flushed.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Records acknowledgements, and replies to each of them with the next scripted reply, if any, or right away.
+     */
+    private static class Gateway extends ReactorLiiklusServiceGrpc.LiiklusServiceImplBase {
+
+        private final BlockingQueue<AckRequest> requests = new LinkedBlockingQueue<>();
+
+        private final Queue<Mono<Empty>> replies = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public Mono<Empty> ack(Mono<AckRequest> request) {
+            return request.flatMap(ack -> {
+                requests.add(ack);
+                Mono<Empty> reply = replies.poll();
+                return reply != null ? reply : Mono.just(Empty.getDefaultInstance());
+            });
+        }
+    }
+}
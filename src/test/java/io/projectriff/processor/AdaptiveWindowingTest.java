@@ -0,0 +1,109 @@
+package io.projectriff.processor;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveWindowingTest {
+
+    private final AdaptiveWindowing windowing = new AdaptiveWindowing(Duration.ofSeconds(1), Duration.ofMillis(100), Duration.ofSeconds(60));
+
+    @Test
+    void startsWithWindowsAsLongAsTheObjective() {
+        assertThat(windowing.getLength()).isEqualTo(Duration.ofSeconds(1));
+        assertThat(new AdaptiveWindowing(Duration.ofMillis(10), Duration.ofMillis(100), Duration.ofSeconds(1)).getLength())
+                .isEqualTo(Duration.ofMillis(100));
+        assertThat(new AdaptiveWindowing(Duration.ofMinutes(5), Duration.ofMillis(100), Duration.ofSeconds(1)).getLength())
+                .isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void scalesWindowsByTheRatioOfTheObjectiveToTheLatency() {
+        windowing.invocationCompleted(stats(10, 0, 800));
+
+        assertThat(windowing.getLength()).isEqualTo(Duration.ofMillis(1250));
+    }
+
+    @Test
+    void atMostDoublesOrHalvesWindowsAtOnce() {
+        windowing.invocationCompleted(stats(10, 0, 1));
+        assertThat(windowing.getLength()).isEqualTo(Duration.ofSeconds(2));
+
+        AdaptiveWindowing slow = new AdaptiveWindowing(Duration.ofSeconds(1), Duration.ofMillis(100), Duration.ofSeconds(60));
+        slow.invocationCompleted(stats(10, 0, 10_000));
+        assertThat(slow.getLength()).isEqualTo(Duration.ofMillis(500));
+    }
+
+    @Test
+    void smoothesObservedLatencies() {
+        windowing.invocationCompleted(stats(10, 0, 500));
+        assertThat(windowing.getLength()).isEqualTo(Duration.ofSeconds(2));
+
+        // the smoothed latency is 500ms + 0.3 * (2000ms - 500ms) = 950ms
+        windowing.invocationCompleted(stats(10, 0, 2000));
+
+        assertThat(windowing.getLength().toMillis()).isEqualTo(2000 * 1000 / 950);
+    }
+
+    @Test
+    void keepsWindowsWithinTheirBounds() {
+        for (int i = 0; i < 20; i++) {
+            windowing.invocationCompleted(stats(10, 0, 1));
+        }
+        assertThat(windowing.getLength()).isEqualTo(Duration.ofSeconds(60));
+
+        for (int i = 0; i < 40; i++) {
+            windowing.invocationCompleted(stats(10, 0, 3_600_000));
+        }
+        assertThat(windowing.getLength()).isEqualTo(Duration.ofMillis(100));
+    }
+
+    @Test
+    void keepsWindowsLongerThanTheInvocationOverhead() {
+        // an overhead of 500ms makes for a floor of 2s, although the latency objective is met
+        windowing.invocationCompleted(stats(10, 500, 1000));
+
+        assertThat(windowing.getLength()).isEqualTo(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void capsTheOverheadFloorToTheMaximumLength() {
+        AdaptiveWindowing bounded = new AdaptiveWindowing(Duration.ofSeconds(1), Duration.ofMillis(100), Duration.ofMillis(1500));
+
+        bounded.invocationCompleted(stats(10, 500, 1000));
+
+        assertThat(bounded.getLength()).isEqualTo(Duration.ofMillis(1500));
+    }
+
+    @Test
+    void emptyWindowsDoNotRescaleWindows() {
+        windowing.invocationCompleted(stats(0, 0, 0));
+        assertThat(windowing.getLength()).as("no latency observed yet").isEqualTo(Duration.ofSeconds(1));
+
+        windowing.invocationCompleted(stats(10, 0, 500));
+        windowing.invocationCompleted(stats(0, 0, 0));
+        windowing.invocationCompleted(stats(0, 0, 0));
+        assertThat(windowing.getLength()).isEqualTo(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void emptyWindowsStillAccountForTheInvocationOverhead() {
+        windowing.invocationCompleted(stats(0, 1000, 0));
+
+        assertThat(windowing.getLength()).isEqualTo(Duration.ofSeconds(4));
+    }
+
+    /**
+     * Returns the stats of an invocation whose setup and drain took {@code overheadMillis} in total.
+     */
+    private static InvocationStats stats(int records, long overheadMillis, long meanRecordLatencyMillis) {
+        return new InvocationStats(records,
+                records * 100L,
+                Duration.ofSeconds(1),
+                Duration.ofMillis(overheadMillis / 2),
+                Duration.ofMillis(overheadMillis - overheadMillis / 2),
+                Duration.ofMillis(meanRecordLatencyMillis));
+    }
+}
@@ -0,0 +1,92 @@
+package io.projectriff.processor;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncPermitsTest {
+
+    private final List<String> granted = new ArrayList<>();
+
+    @Test
+    void grantsAvailablePermitsRightAway() {
+        AsyncPermits permits = new AsyncPermits(10L);
+
+        acquire(permits, 4L, "a");
+        acquire(permits, 6L, "b");
+
+        assertThat(granted).containsExactly("a", "b");
+        assertThat(permits.tryAcquire(1L)).isFalse();
+    }
+
+    @Test
+    void grantsWaitersInOrder() {
+        AsyncPermits permits = new AsyncPermits(10L);
+        acquire(permits, 10L, "all");
+
+        acquire(permits, 6L, "first");
+        acquire(permits, 2L, "second");
+        assertThat(granted).containsExactly("all");
+
+        permits.release(5L);
+        assertThat(granted).as("a smaller request doesn't overtake an older one").containsExactly("all");
+
+        permits.release(5L);
+        assertThat(granted).containsExactly("all", "first", "second");
+    }
+
+    @Test
+    void tryAcquireDoesNotOvertakeWaiters() {
+        AsyncPermits permits = new AsyncPermits(10L);
+        acquire(permits, 8L, "a");
+        acquire(permits, 5L, "b");
+
+        assertThat(permits.tryAcquire(2L)).isFalse();
+    }
+
+    @Test
+    void cancelledWaitersGiveWayToTheNextOnes() {
+        AsyncPermits permits = new AsyncPermits(10L);
+        acquire(permits, 8L, "a");
+        Disposable cancelled = acquire(permits, 5L, "b");
+        acquire(permits, 2L, "c");
+        assertThat(granted).containsExactly("a");
+
+        cancelled.dispose();
+        assertThat(granted).containsExactly("a", "c");
+
+        permits.release(8L);
+        assertThat(granted).containsExactly("a", "c");
+        assertThat(permits.tryAcquire(8L)).isTrue();
+    }
+
+    @Test
+    void grantsRequestsOverCapacityOnceEveryPermitIsAvailable() {
+        AsyncPermits permits = new AsyncPermits(10L);
+        acquire(permits, 1L, "small");
+
+        acquire(permits, 25L, "large");
+        assertThat(granted).containsExactly("small");
+
+        permits.release(1L);
+        assertThat(granted).containsExactly("small", "large");
+        assertThat(permits.tryAcquire(1L)).isFalse();
+
+        permits.release(25L);
+        assertThat(permits.tryAcquire(10L)).isTrue();
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThatThrownBy(() -> new AsyncPermits(0L)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Disposable acquire(AsyncPermits permits, long count, String name) {
+        return permits.acquire(count).subscribe(null, null, () -> granted.add(name));
+    }
+}
@@ -0,0 +1,196 @@
+package io.projectriff.processor;
+
+import com.github.bsideup.liiklus.protocol.PublishRequest;
+import com.github.bsideup.liiklus.protocol.ReactorLiiklusServiceGrpc;
+import com.github.bsideup.liiklus.protocol.ReceiveReply;
+import com.github.bsideup.liiklus.protocol.ReceiveRequest;
+import com.github.bsideup.liiklus.protocol.SubscribeReply;
+import com.github.bsideup.liiklus.protocol.SubscribeRequest;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.projectriff.processor.serialization.Message;
+import org.HdrHistogram.Histogram;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Measures the end-to-end throughput and latency of the real {@link Processor}, running in-process against an
+ * {@link InMemoryLiiklus} gateway and an {@link InMemoryFunction}, over gRPC in-process transports.
+ *
+ * <p>Messages stamped with their send time are published to the input stream, and results are consumed from the
+ * output streams, where the time elapsed since the message they derive from was sent is recorded. Arguments are
+ * {@code key=value} pairs, see {@link #DEFAULTS}, e.g.</p>
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=io.projectriff.processor.EndToEndBenchmark \
+ *     -Dexec.args="function=fan-out records=1000000 payloadSize=1000 rate=50000"
+ * </pre>
+ */
+public class EndToEndBenchmark {
+
+    private static final String GATEWAY = "liiklus";
+
+    private static final String FUNCTION = "function";
+
+    private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+    static {
+        DEFAULTS.put("function", "echo"); // echo, fan-out, slow or bursty
+        DEFAULTS.put("records", "100000"); // number of messages published to the input stream
+        DEFAULTS.put("payloadSize", "100"); // in bytes
+        DEFAULTS.put("rate", "0"); // messages published per second, 0 for as fast as possible
+        DEFAULTS.put("partitions", "4"); // of every stream
+        DEFAULTS.put("windowing", "count-or-time:1000,100ms");
+        DEFAULTS.put("invocationConcurrency", Integer.toString(Processor.DEFAULT_INVOCATION_CONCURRENCY));
+        DEFAULTS.put("publishWindow", Integer.toString(Processor.DEFAULT_PUBLISH_WINDOW));
+        DEFAULTS.put("maxInFlightBytes", "0"); // unbounded
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> settings = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2 || !DEFAULTS.containsKey(keyValue[0])) {
+                throw new IllegalArgumentException(String.format("Expected key=value arguments with a key among %s, got \"%s\"", DEFAULTS.keySet(), arg));
+            }
+            settings.put(keyValue[0], keyValue[1]);
+        }
+        int records = Integer.parseInt(settings.get("records"));
+        int payloadSize = Integer.parseInt(settings.get("payloadSize"));
+        int rate = Integer.parseInt(settings.get("rate"));
+        int partitions = Integer.parseInt(settings.get("partitions"));
+
+        InMemoryFunction function;
+        int resultsPerRecord = 1;
+        int outputCount = 1;
+        switch (settings.get("function")) {
+            case "echo":
+                function = InMemoryFunction.echo();
+                break;
+            case "fan-out":
+                resultsPerRecord = 4;
+                outputCount = 2;
+                function = InMemoryFunction.fanOut(resultsPerRecord, outputCount);
+                break;
+            case "slow":
+                function = InMemoryFunction.slow(Duration.ofMillis(1));
+                break;
+            case "bursty":
+                function = InMemoryFunction.bursty(10_000, Duration.ofSeconds(1));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown function " + settings.get("function"));
+        }
+
+        Server gateway = InProcessServerBuilder.forName(GATEWAY).addService(new InMemoryLiiklus(partitions)).build().start();
+        Server functionServer = InProcessServerBuilder.forName(FUNCTION).addService(function).build().start();
+        ManagedChannel gatewayChannel = InProcessChannelBuilder.forName(GATEWAY).build();
+        ManagedChannel functionChannel = InProcessChannelBuilder.forName(FUNCTION).build();
+        ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub liiklus = ReactorLiiklusServiceGrpc.newReactorStub(gatewayChannel);
+
+        List<String> outputNames = IntStream.range(0, outputCount).mapToObj(i -> "out-" + i).collect(Collectors.toList());
+        Processor processor = Processor.builder()
+                .inputs(Collections.singletonList(new FullyQualifiedTopic(GATEWAY, "in")), Collections.singletonList("in"))
+                .outputs(outputNames.stream().map(name -> new FullyQualifiedTopic(GATEWAY, name)).collect(Collectors.toList()),
+                        outputNames,
+                        Collections.nCopies(outputCount, "application/octet-stream"))
+                .group("processor", 0, Processor.NO_PREVIOUS_GROUP_VERSION)
+                .autoOffsetReset(SubscribeRequest.AutoOffsetReset.EARLIEST)
+                .gatewayChannels(address -> gatewayChannel)
+                .riffStub(new RawRiffStub(functionChannel))
+                .publishWindow(Integer.parseInt(settings.get("publishWindow")))
+                .maxInFlightBytes(Long.parseLong(settings.get("maxInFlightBytes")))
+                .windowing(WindowingStrategies.parse(settings.get("windowing")))
+                .invocationConcurrency(Integer.parseInt(settings.get("invocationConcurrency")))
+                .build();
+
+        long expected = (long) records * resultsPerRecord;
+        Histogram latencies = new Histogram(TimeUnit.MINUTES.toNanos(1), 3);
+        AtomicLong received = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(1);
+        Disposable consumer = Flux.fromIterable(outputNames)
+                .flatMap(output -> liiklus.subscribe(SubscribeRequest.newBuilder()
+                        .setTopic(output)
+                        .setGroup("benchmark")
+                        .setAutoOffsetReset(SubscribeRequest.AutoOffsetReset.EARLIEST)
+                        .build()))
+                .filter(SubscribeReply::hasAssignment)
+                .flatMap(reply -> liiklus.receive(ReceiveRequest.newBuilder().setAssignment(reply.getAssignment()).build()), Integer.MAX_VALUE)
+                .map(ReceiveReply::getRecord)
+                .subscribe(record -> {
+                    long latency = LoadGenerator.epochNanos() - LoadGenerator.sentAt(record.getValue());
+                    synchronized (latencies) {
+                        latencies.recordValue(Math.min(Math.max(0L, latency), latencies.getHighestTrackableValue()));
+                    }
+                    if (received.incrementAndGet() == expected) {
+                        done.countDown();
+                    }
+                }, error -> {
+                    System.err.format("Consuming results failed after receiving %d results out of %d%n", received.get(), expected);
+                    error.printStackTrace();
+                    System.exit(1);
+                });
+        Disposable processing = processor.process().subscribe(null, error -> {
+            System.err.format("Processor failed after receiving %d results out of %d%n", received.get(), expected);
+            error.printStackTrace();
+            System.exit(1);
+        });
+
+        System.out.format("Running %s with %s%n", function, settings);
+        byte[] payload = new byte[payloadSize];
+        new Random(0).nextBytes(payload);
+        ByteString payloadBytes = ByteString.copyFrom(payload);
+        Flux<Integer> ticks = rate > 0
+                ? Flux.interval(Duration.ofMillis(10)).onBackpressureBuffer().concatMapIterable(tick -> Collections.nCopies(Math.max(1, rate / 100), 0)).take(records)
+                : Flux.range(0, records);
+        long start = System.nanoTime();
+        ticks.flatMap(i -> liiklus.publish(PublishRequest.newBuilder()
+                .setTopic("in")
+                .setValue(Message.newBuilder()
+                        .setPayload(payloadBytes)
+                        .setContentType("application/octet-stream")
+                        .putHeaders(LoadGenerator.SENT_AT_HEADER, Long.toString(LoadGenerator.epochNanos()))
+                        .build()
+                        .toByteString())
+                .build()), 256)
+                .then()
+                .block();
+        System.out.format("Published %d messages in %d ms%n", records, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        if (!done.await(10, TimeUnit.MINUTES)) {
+            System.out.format("Timed out, received %d results out of %d%n", received.get(), expected);
+        }
+        long elapsed = System.nanoTime() - start;
+        processing.dispose();
+        consumer.dispose();
+
+        synchronized (latencies) {
+            System.out.format("Processed %d results in %d ms: %.0f results/s%n", received.get(), TimeUnit.NANOSECONDS.toMillis(elapsed), received.get() * 1e9 / elapsed);
+            for (double percentile : Arrays.asList(50.0, 99.0, 99.9, 100.0)) {
+                System.out.format("  p%-5s %10.3f ms%n", percentile, latencies.getValueAtPercentile(percentile) / 1e6);
+            }
+        }
+
+        gatewayChannel.shutdownNow();
+        functionChannel.shutdownNow();
+        gateway.shutdownNow();
+        functionServer.shutdownNow();
+        System.exit(0);
+    }
+}
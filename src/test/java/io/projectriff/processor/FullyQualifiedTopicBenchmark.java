@@ -0,0 +1,50 @@
+package io.projectriff.processor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Measures parsing the coordinates of input and output streams, with and without tuning settings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FullyQualifiedTopicBenchmark {
+
+    @Param({"1", "16"})
+    public int topicCount;
+
+    @Param({"", "?maxAssignments=4&prefetch=1024&lowTide=256"})
+    public String settings;
+
+    private String configurations;
+
+    @Setup
+    public void setUp() {
+        configurations = IntStream.range(0, topicCount)
+                .mapToObj(i -> "liiklus.riff-system.svc.cluster.local:6565/some-namespace_some-stream-" + i + settings)
+                .collect(Collectors.joining(","));
+    }
+
+    @Benchmark
+    public List<FullyQualifiedTopic> parseInputs() {
+        return FullyQualifiedTopic.parseInputs(configurations);
+    }
+}
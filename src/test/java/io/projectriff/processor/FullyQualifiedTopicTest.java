@@ -0,0 +1,102 @@
+package io.projectriff.processor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FullyQualifiedTopicTest {
+
+    @Test
+    void leavesSettingsUnsetWhenAbsent() {
+        List<FullyQualifiedTopic> topics = FullyQualifiedTopic.parseInputs("gateway:6565/topic");
+
+        assertThat(topics).hasSize(1);
+        FullyQualifiedTopic topic = topics.get(0);
+        assertThat(topic.getGatewayAddress()).isEqualTo("gateway:6565");
+        assertThat(topic.getTopic()).isEqualTo("topic");
+        assertThat(topic.getMaxAssignments()).isEqualTo(FullyQualifiedTopic.UNSET);
+        assertThat(topic.getPrefetch()).isEqualTo(FullyQualifiedTopic.UNSET);
+        assertThat(topic.getLowTide()).isEqualTo(FullyQualifiedTopic.UNSET);
+    }
+
+    @Test
+    void parsesTheSettingsOfEachInput() {
+        List<FullyQualifiedTopic> topics = FullyQualifiedTopic.parseInputs(
+                "gateway:6565/first?maxAssignments=4&prefetch=1024&lowTide=256,other:6565/second?lowTide=8");
+
+        assertThat(topics).hasSize(2);
+        FullyQualifiedTopic first = topics.get(0);
+        assertThat(first.getGatewayAddress()).isEqualTo("gateway:6565");
+        assertThat(first.getTopic()).isEqualTo("first");
+        assertThat(first.getMaxAssignments()).isEqualTo(4);
+        assertThat(first.getPrefetch()).isEqualTo(1024);
+        assertThat(first.getLowTide()).isEqualTo(256);
+        FullyQualifiedTopic second = topics.get(1);
+        assertThat(second.getGatewayAddress()).isEqualTo("other:6565");
+        assertThat(second.getTopic()).isEqualTo("second");
+        assertThat(second.getMaxAssignments()).isEqualTo(FullyQualifiedTopic.UNSET);
+        assertThat(second.getPrefetch()).isEqualTo(FullyQualifiedTopic.UNSET);
+        assertThat(second.getLowTide()).isEqualTo(8);
+    }
+
+    @Test
+    void ignoresSettingsInTheIdentityOfATopic() {
+        assertThat(FullyQualifiedTopic.parseInputs("gateway:6565/topic?prefetch=16"))
+                .containsExactly(new FullyQualifiedTopic("gateway:6565", "topic"));
+    }
+
+    @Test
+    void acceptsALowTideEqualToThePrefetch() {
+        FullyQualifiedTopic topic = FullyQualifiedTopic.parseInputs("gateway:6565/topic?prefetch=16&lowTide=16").get(0);
+
+        assertThat(topic.getPrefetch()).isEqualTo(16);
+        assertThat(topic.getLowTide()).isEqualTo(16);
+    }
+
+    @Test
+    void rejectsMalformedTopics() {
+        assertThatThrownBy(() -> FullyQualifiedTopic.parseInputs("gateway:6565"))
+                .hasMessageContaining("gatewayAddress:port/topicName");
+    }
+
+    @Test
+    void rejectsMalformedSettings() {
+        assertThatThrownBy(() -> FullyQualifiedTopic.parseInputs("gateway:6565/topic?prefetch"))
+                .hasMessageContaining("\"prefetch\"");
+        assertThatThrownBy(() -> FullyQualifiedTopic.parseInputs("gateway:6565/topic?batch=10"))
+                .hasMessageContaining("\"batch=10\"");
+        assertThatThrownBy(() -> FullyQualifiedTopic.parseInputs("gateway:6565/topic?prefetch=10&&lowTide=5"))
+                .hasMessageContaining("Expected one of");
+        assertThatThrownBy(() -> FullyQualifiedTopic.parseInputs("gateway:6565/topic?prefetch="))
+                .hasMessageContaining("positive integer value for prefetch");
+        assertThatThrownBy(() -> FullyQualifiedTopic.parseInputs("gateway:6565/topic?lowTide=many"))
+                .hasMessageContaining("positive integer value for lowTide");
+    }
+
+    @Test
+    void rejectsOutOfRangeSettings() {
+        assertThatThrownBy(() -> FullyQualifiedTopic.parseInputs("gateway:6565/topic?maxAssignments=0"))
+                .hasMessageContaining("positive integer value for maxAssignments");
+        assertThatThrownBy(() -> FullyQualifiedTopic.parseInputs("gateway:6565/topic?prefetch=-1"))
+                .hasMessageContaining("positive integer value for prefetch");
+        assertThatThrownBy(() -> FullyQualifiedTopic.parseInputs("gateway:6565/topic?prefetch=2147483648"))
+                .hasMessageContaining("positive integer value for prefetch");
+    }
+
+    @Test
+    void rejectsALowTideAboveThePrefetch() {
+        assertThatThrownBy(() -> FullyQualifiedTopic.parseInputs("gateway:6565/topic?prefetch=16&lowTide=17"))
+                .hasMessageContaining("Expected lowTide to be at most prefetch (16), got 17");
+    }
+
+    @Test
+    void rejectsSettingsOnOutputs() {
+        assertThat(FullyQualifiedTopic.parseOutputs("gateway:6565/first,gateway:6565/second"))
+                .containsExactly(new FullyQualifiedTopic("gateway:6565", "first"), new FullyQualifiedTopic("gateway:6565", "second"));
+        assertThatThrownBy(() -> FullyQualifiedTopic.parseOutputs("gateway:6565/topic?prefetch=16"))
+                .hasMessageContaining("no tuning settings on an output topic");
+    }
+}
@@ -0,0 +1,98 @@
+package io.projectriff.processor;
+
+import io.projectriff.invoker.rpc.InputFrame;
+import io.projectriff.invoker.rpc.InputSignal;
+import io.projectriff.invoker.rpc.OutputFrame;
+import io.projectriff.invoker.rpc.OutputSignal;
+import io.projectriff.invoker.rpc.ReactorRiffGrpc;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory riff functions, for driving the processor without an actual function invoker. Every result carries the
+ * payload, content-type and headers of the input it derives from.
+ */
+class InMemoryFunction extends ReactorRiffGrpc.RiffImplBase {
+
+    private final String description;
+
+    private final Function<Flux<InputFrame>, Flux<OutputFrame>> function;
+
+    private InMemoryFunction(String description, Function<Flux<InputFrame>, Flux<OutputFrame>> function) {
+        this.description = description;
+        this.function = function;
+    }
+
+    /**
+     * Emits one result per input, right away.
+     */
+    static InMemoryFunction echo() {
+        return new InMemoryFunction("echo", frames -> frames.map(frame -> result(frame, 0)));
+    }
+
+    /**
+     * Emits {@code copies} results per input, spread across {@code outputs} outputs.
+     */
+    static InMemoryFunction fanOut(int copies, int outputs) {
+        return new InMemoryFunction(String.format("fan-out(%d copies, %d outputs)", copies, outputs),
+                frames -> frames.flatMapIterable(frame -> IntStream.range(0, copies)
+                        .mapToObj(copy -> result(frame, copy % outputs))
+                        .collect(Collectors.toList())));
+    }
+
+    /**
+     * Emits one result for each of the first {@code count} inputs of an invocation, then completes the invocation
+     * without reading further inputs.
+     */
+    static InMemoryFunction takeFirst(int count) {
+        return new InMemoryFunction(String.format("take-first(%d)", count),
+                frames -> frames.take(count).map(frame -> result(frame, 0)));
+    }
+
+    /**
+     * Emits one result per input, taking {@code delay} to process each input.
+     */
+    static InMemoryFunction slow(Duration delay) {
+        return new InMemoryFunction(String.format("slow(%s)", delay),
+                frames -> frames.concatMap(frame -> Mono.delay(delay).thenReturn(result(frame, 0))));
+    }
+
+    /**
+     * Emits one result per input, in bursts of {@code size} results (or less, after {@code maxWait}).
+     */
+    static InMemoryFunction bursty(int size, Duration maxWait) {
+        return new InMemoryFunction(String.format("bursty(%d, %s)", size, maxWait),
+                frames -> frames.bufferTimeout(size, maxWait)
+                        .flatMapIterable(burst -> burst.stream()
+                                .map(frame -> result(frame, 0))
+                                .collect(Collectors.toList())));
+    }
+
+    @Override
+    public Flux<OutputSignal> invoke(Flux<InputSignal> request) {
+        return request
+                .filter(InputSignal::hasData)
+                .map(InputSignal::getData)
+                .transform(function)
+                .map(frame -> OutputSignal.newBuilder().setData(frame).build());
+    }
+
+    private static OutputFrame result(InputFrame frame, int resultIndex) {
+        return OutputFrame.newBuilder()
+                .setPayload(frame.getPayload())
+                .setContentType(frame.getContentType())
+                .putAllHeaders(frame.getHeadersMap())
+                .setResultIndex(resultIndex)
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,49 @@
+package io.projectriff.processor;
+
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Serves an {@link InMemoryLiiklus} gateway over TCP, as a stand-in for a real liiklus gateway (and broker) when
+ * load testing the processor on a single machine. Run from the test classpath, e.g.
+ * <pre>
+ * PORT=6565 PARTITIONS=8 mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=io.projectriff.processor.InMemoryGateway
+ * </pre>
+ *
+ * <p>Everything is kept in memory, and lost when the process stops.</p>
+ */
+public class InMemoryGateway {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryGateway.class);
+
+    /**
+     * Optional ENV VAR key holding the port to listen on. Defaults to {@value #DEFAULT_PORT}.
+     */
+    private static final String PORT = "PORT";
+
+    /**
+     * Optional ENV VAR key holding the number of partitions of every topic. Defaults to {@value #DEFAULT_PARTITIONS}.
+     */
+    private static final String PARTITIONS = "PARTITIONS";
+
+    private static final int DEFAULT_PORT = 6565;
+
+    private static final int DEFAULT_PARTITIONS = 8;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = Processor.intEnv(PORT, DEFAULT_PORT);
+        int partitions = Processor.intEnv(PARTITIONS, DEFAULT_PARTITIONS);
+        Server server = NettyServerBuilder.forPort(port)
+                .addService(new InMemoryLiiklus(partitions))
+                .build()
+                .start();
+        logger.info("In-memory gateway listening on port {}, with {} partitions per topic", port, partitions);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdownNow));
+        server.awaitTermination();
+    }
+}
@@ -0,0 +1,342 @@
+package io.projectriff.processor;
+
+import com.github.bsideup.liiklus.protocol.AckRequest;
+import com.github.bsideup.liiklus.protocol.Assignment;
+import com.github.bsideup.liiklus.protocol.GetOffsetsReply;
+import com.github.bsideup.liiklus.protocol.GetOffsetsRequest;
+import com.github.bsideup.liiklus.protocol.PublishReply;
+import com.github.bsideup.liiklus.protocol.PublishRequest;
+import com.github.bsideup.liiklus.protocol.ReactorLiiklusServiceGrpc;
+import com.github.bsideup.liiklus.protocol.ReceiveReply;
+import com.github.bsideup.liiklus.protocol.ReceiveRequest;
+import com.github.bsideup.liiklus.protocol.SubscribeReply;
+import com.github.bsideup.liiklus.protocol.SubscribeRequest;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Empty;
+import com.google.protobuf.Timestamp;
+import io.grpc.Status;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.publisher.ReplayProcessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory implementation of the liiklus gateway, for driving the processor without a broker.
+ *
+ * <p>Topics are created on first use, with a fixed number of partitions, each being an append-only list of records.
+ * Records with a key are spread across partitions by key hash, others in a round-robin fashion. Partitions of a topic
+ * are evenly assigned to the subscribers of a consumer group (version), and re-assigned as subscribers come and go:
+ * receiving from a partition that has been re-assigned elsewhere simply completes. Offsets committed by consumer
+ * groups are kept per group version, and receiving resumes right after the committed offset (or else at the position
+ * given by the auto offset reset policy).</p>
+ */
+class InMemoryLiiklus extends ReactorLiiklusServiceGrpc.LiiklusServiceImplBase {
+
+    private final int partitionCount;
+
+    private final ConcurrentMap<String, Topic> topics = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<GroupKey, Group> groups = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<GroupKey, ConcurrentMap<Integer, Long>> committed = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    InMemoryLiiklus(int partitionCount) {
+        this.partitionCount = partitionCount;
+    }
+
+    @Override
+    public Mono<PublishReply> publish(Mono<PublishRequest> request) {
+        return request.map(publish -> {
+            Topic topic = topic(publish.getTopic());
+            int partition = topic.partitionFor(publish.getKey());
+            long offset = topic.partitions[partition].append(publish.getKey(), publish.getValue());
+            return PublishReply.newBuilder()
+                    .setTopic(publish.getTopic())
+                    .setPartition(partition)
+                    .setOffset(offset)
+                    .build();
+        });
+    }
+
+    @Override
+    public Flux<SubscribeReply> subscribe(Mono<SubscribeRequest> request) {
+        return request.flatMapMany(subscribe -> {
+            GroupKey key = new GroupKey(subscribe.getTopic(), subscribe.getGroup(), subscribe.getGroupVersion());
+            return groups.computeIfAbsent(key, k -> new Group(k, topic(k.topic)))
+                    .join(subscribe.getAutoOffsetReset());
+        });
+    }
+
+    @Override
+    public Flux<ReceiveReply> receive(Mono<ReceiveRequest> request) {
+        return request.flatMapMany(receive -> {
+            Session session = sessions.get(receive.getAssignment().getSessionId());
+            if (session == null || session.partition != receive.getAssignment().getPartition()) {
+                return Flux.error(Status.NOT_FOUND.withDescription("Unknown assignment " + receive.getAssignment()).asRuntimeException());
+            }
+            return session.receive(receive.getLastKnownOffset());
+        });
+    }
+
+    @Override
+    public Mono<Empty> ack(Mono<AckRequest> request) {
+        return request.map(ack -> {
+            offsets(new GroupKey(ack.getTopic(), ack.getGroup(), ack.getGroupVersion())).put(ack.getPartition(), ack.getOffset());
+            return Empty.getDefaultInstance();
+        });
+    }
+
+    @Override
+    public Mono<GetOffsetsReply> getOffsets(Mono<GetOffsetsRequest> request) {
+        return request.map(getOffsets -> GetOffsetsReply.newBuilder()
+                .putAllOffsets(offsets(new GroupKey(getOffsets.getTopic(), getOffsets.getGroup(), getOffsets.getGroupVersion())))
+                .build());
+    }
+
+    private Topic topic(String name) {
+        return topics.computeIfAbsent(name, n -> new Topic(partitionCount));
+    }
+
+    private ConcurrentMap<Integer, Long> offsets(GroupKey key) {
+        return committed.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+    }
+
+    private static class Topic {
+
+        private final Partition[] partitions;
+
+        private final AtomicInteger roundRobin = new AtomicInteger();
+
+        private Topic(int partitionCount) {
+            this.partitions = new Partition[partitionCount];
+            for (int i = 0; i < partitionCount; i++) {
+                partitions[i] = new Partition();
+            }
+        }
+
+        private int partitionFor(ByteString key) {
+            return key.isEmpty()
+                    ? Math.floorMod(roundRobin.getAndIncrement(), partitions.length)
+                    : Math.floorMod(key.hashCode(), partitions.length);
+        }
+    }
+
+    /**
+     * An append-only log of records, which notifies readers of its size as records are appended.
+     */
+    private static class Partition {
+
+        private final List<ReceiveReply.Record> records = new ArrayList<>();
+
+        private final ReplayProcessor<Integer> heads = ReplayProcessor.cacheLastOrDefault(0);
+
+        private final FluxSink<Integer> headsSink = heads.sink();
+
+        private long append(ByteString key, ByteString value) {
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                long offset = records.size();
+                records.add(ReceiveReply.Record.newBuilder()
+                        .setOffset(offset)
+                        .setKey(key)
+                        .setValue(value)
+                        .setTimestamp(Timestamp.newBuilder()
+                                .setSeconds(now / 1000L)
+                                .setNanos((int) (now % 1000L) * 1_000_000))
+                        .build());
+                headsSink.next(records.size());
+                return offset;
+            }
+        }
+
+        private synchronized int size() {
+            return records.size();
+        }
+
+        /**
+         * Returns the records of this partition starting at the given offset, including those yet to be appended.
+         */
+        private Flux<ReceiveReply.Record> read(long from) {
+            return Flux.defer(() -> {
+                long[] next = {from};
+                return heads.onBackpressureLatest()
+                        .concatMap(head -> Flux.fromIterable(slice(next, head)), 1);
+            });
+        }
+
+        private synchronized List<ReceiveReply.Record> slice(long[] next, int head) {
+            if (next[0] >= head) {
+                return Collections.emptyList();
+            }
+            List<ReceiveReply.Record> slice = new ArrayList<>(records.subList((int) next[0], head));
+            next[0] = head;
+            return slice;
+        }
+    }
+
+    /**
+     * The subscribers of a consumer group (version) to a topic, and how partitions are assigned to them.
+     */
+    private class Group {
+
+        private final GroupKey key;
+
+        private final Topic topic;
+
+        private final List<Member> members = new ArrayList<>();
+
+        private Group(GroupKey key, Topic topic) {
+            this.key = key;
+            this.topic = topic;
+        }
+
+        private Flux<SubscribeReply> join(SubscribeRequest.AutoOffsetReset autoOffsetReset) {
+            return Flux.create(sink -> {
+                Member member = new Member(sink, autoOffsetReset);
+                sink.onDispose(() -> leave(member));
+                synchronized (this) {
+                    members.add(member);
+                    rebalance();
+                }
+            });
+        }
+
+        private synchronized void leave(Member member) {
+            if (members.remove(member)) {
+                member.sessions.values().forEach(Session::revoke);
+                member.sessions.clear();
+                rebalance();
+            }
+        }
+
+        /**
+         * Assigns partition {@code p} to the member at index {@code p % members}, revoking previous assignments.
+         */
+        private void rebalance() {
+            int memberCount = members.size();
+            for (int index = 0; index < memberCount; index++) {
+                Member member = members.get(index);
+                int memberIndex = index;
+                member.sessions.entrySet().removeIf(assigned -> {
+                    if (assigned.getKey() % memberCount != memberIndex) {
+                        assigned.getValue().revoke();
+                        return true;
+                    }
+                    return false;
+                });
+                for (int partition = index; partition < topic.partitions.length; partition += memberCount) {
+                    if (!member.sessions.containsKey(partition)) {
+                        Session session = new Session(key, topic.partitions[partition], partition, member.autoOffsetReset);
+                        member.sessions.put(partition, session);
+                        member.sink.next(SubscribeReply.newBuilder()
+                                .setAssignment(Assignment.newBuilder()
+                                        .setSessionId(session.id)
+                                        .setPartition(partition))
+                                .build());
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Member {
+
+        private final FluxSink<SubscribeReply> sink;
+
+        private final SubscribeRequest.AutoOffsetReset autoOffsetReset;
+
+        private final Map<Integer, Session> sessions = new HashMap<>();
+
+        private Member(FluxSink<SubscribeReply> sink, SubscribeRequest.AutoOffsetReset autoOffsetReset) {
+            this.sink = sink;
+            this.autoOffsetReset = autoOffsetReset;
+        }
+    }
+
+    /**
+     * The assignment of a partition to a subscriber, until it is revoked.
+     */
+    private class Session {
+
+        private final String id = UUID.randomUUID().toString();
+
+        private final GroupKey group;
+
+        private final Partition log;
+
+        private final int partition;
+
+        private final SubscribeRequest.AutoOffsetReset autoOffsetReset;
+
+        private final MonoProcessor<Void> revoked = MonoProcessor.create();
+
+        private Session(GroupKey group, Partition log, int partition, SubscribeRequest.AutoOffsetReset autoOffsetReset) {
+            this.group = group;
+            this.log = log;
+            this.partition = partition;
+            this.autoOffsetReset = autoOffsetReset;
+            sessions.put(id, this);
+        }
+
+        private Flux<ReceiveReply> receive(long lastKnownOffset) {
+            Long committedOffset = offsets(group).get(partition);
+            long from = committedOffset != null
+                    ? committedOffset + 1
+                    : autoOffsetReset == SubscribeRequest.AutoOffsetReset.EARLIEST ? 0L : log.size();
+            return log.read(from)
+                    .map(record -> ReceiveReply.newBuilder()
+                            .setRecord(record.getOffset() <= lastKnownOffset ? record.toBuilder().setReplay(true).build() : record)
+                            .build())
+                    .takeUntilOther(revoked);
+        }
+
+        private void revoke() {
+            sessions.remove(id);
+            revoked.onComplete();
+        }
+    }
+
+    private static class GroupKey {
+
+        private final String topic;
+
+        private final String group;
+
+        private final int version;
+
+        private GroupKey(String topic, String group, int version) {
+            this.topic = topic;
+            this.group = group;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            GroupKey that = (GroupKey) o;
+            return version == that.version &&
+                    Objects.equals(topic, that.topic) &&
+                    Objects.equals(group, that.group);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(topic, group, version);
+        }
+    }
+}
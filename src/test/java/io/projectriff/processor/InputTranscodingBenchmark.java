@@ -0,0 +1,82 @@
+package io.projectriff.processor;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.projectriff.invoker.rpc.InputFrame;
+import io.projectriff.invoker.rpc.InputSignal;
+import io.projectriff.processor.serialization.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares turning a serialized at-rest {@link Message} (as received from the gateway) into a serialized
+ * {@link InputSignal} (as sent to the function), by materializing messages versus splicing bytes. This is the
+ * {@code toRiffSignal()} path of {@link Processor}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InputTranscodingBenchmark {
+
+    private static final int ARG_INDEX = 1;
+
+    @Param({"100", "10000", "1000000"})
+    public int payloadSize;
+
+    @Param({"0", "4", "16"})
+    public int headerCount;
+
+    private ByteString message;
+
+    private ByteString argIndexSuffix;
+
+    @Setup
+    public void setUp() {
+        byte[] payload = new byte[payloadSize];
+        new Random(0).nextBytes(payload);
+        Message.Builder builder = Message.newBuilder()
+                .setPayload(ByteString.copyFrom(payload))
+                .setContentType("application/octet-stream");
+        for (int i = 0; i < headerCount; i++) {
+            builder.putHeaders("some-header-" + i, "some-value-" + i);
+        }
+        message = builder.build().toByteString();
+        argIndexSuffix = Transcoding.argIndexSuffix(ARG_INDEX);
+    }
+
+    /**
+     * The implementation prior to byte level transcoding.
+     */
+    @Benchmark
+    public ByteString materialized() throws InvalidProtocolBufferException {
+        Message input = Message.parseFrom(message);
+        return InputSignal.newBuilder()
+                .setData(InputFrame.newBuilder()
+                        .setPayload(input.getPayload())
+                        .setContentType(input.getContentType())
+                        .putAllHeaders(input.getHeadersMap())
+                        .setArgIndex(ARG_INDEX))
+                .build()
+                .toByteString();
+    }
+
+    @Benchmark
+    public ByteString spliced() {
+        return Transcoding.inputSignal(message, argIndexSuffix);
+    }
+}
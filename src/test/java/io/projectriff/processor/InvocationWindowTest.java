@@ -0,0 +1,120 @@
+package io.projectriff.processor;
+
+import com.google.protobuf.ByteString;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InvocationWindowTest {
+
+    private final List<InvocationStats> completed = new ArrayList<>();
+
+    private AckCoalescer.PartitionAcks acks;
+
+    private OffsetTracker tracker;
+
+    private AsyncPermits inFlightBytes;
+
+    private InvocationWindow window;
+
+    @BeforeEach
+    void setUp() {
+        AckCoalescer coalescer = new AckCoalescer("group", 0, Integer.MAX_VALUE, Duration.ofHours(1), PipelineMetrics.disabled());
+        acks = coalescer.forPartition(new FullyQualifiedTopic("gateway:6565", "topic"), null, 0);
+        tracker = new OffsetTracker(acks);
+        inFlightBytes = new AsyncPermits(100L);
+        window = new InvocationWindow(completed::add);
+        window.opened();
+        window.started();
+        window.inputStarted();
+    }
+
+    @Test
+    void completesOnceInputAndOutputAreComplete() {
+        window.add(record(0L));
+        window.add(record(1L));
+
+        window.inputComplete();
+        assertThat(completed).isEmpty();
+        assertThat(acks.lastAcknowledged()).isEqualTo(-1L);
+
+        window.outputComplete();
+        assertThat(completed).hasSize(1);
+        assertThat(completed.get(0).getRecords()).isEqualTo(2);
+        assertThat(acks.lastAcknowledged()).isEqualTo(1L);
+    }
+
+    @Test
+    void waitsForEveryResultToBePublished() {
+        window.add(record(0L));
+        window.inputComplete();
+        window.retain();
+        window.retain();
+        window.outputComplete();
+
+        window.release();
+        assertThat(completed).isEmpty();
+
+        window.release();
+        assertThat(completed).hasSize(1);
+        assertThat(acks.lastAcknowledged()).isEqualTo(0L);
+    }
+
+    @Test
+    void allowsResultsToBePublishedBeforeTheInputIsComplete() {
+        window.add(record(0L));
+        window.retain();
+        window.release();
+        window.outputComplete();
+        assertThat(completed).isEmpty();
+
+        window.inputComplete();
+        assertThat(completed).hasSize(1);
+    }
+
+    @Test
+    void givesBackTheBytesOfProcessedRecords() {
+        window.add(record(0L));
+        assertThat(inFlightBytes.tryAcquire(100L)).isFalse();
+
+        window.inputComplete();
+        window.outputComplete();
+
+        assertThat(inFlightBytes.tryAcquire(100L)).isTrue();
+    }
+
+    @Test
+    void givesBackTheBytesOfAbandonedRecordsWithoutAcknowledgingThem() {
+        window.add(record(0L));
+        window.inputComplete();
+        window.retain();
+
+        window.abandon();
+        window.add(record(1L));
+        window.outputComplete();
+        window.release();
+
+        assertThat(inFlightBytes.tryAcquire(100L)).isTrue();
+        assertThat(completed).isEmpty();
+        assertThat(acks.lastAcknowledged()).isEqualTo(-1L);
+    }
+
+    @Test
+    void completesEmptyInvocations() {
+        window.inputComplete();
+        window.outputComplete();
+
+        assertThat(completed).hasSize(1);
+        assertThat(completed.get(0).getRecords()).isZero();
+    }
+
+    private InboundRecord record(long offset) {
+        assertThat(inFlightBytes.tryAcquire(10L)).isTrue();
+        return new InboundRecord(ByteString.copyFromUtf8("signal"), tracker, offset, 0, inFlightBytes, 10);
+    }
+}
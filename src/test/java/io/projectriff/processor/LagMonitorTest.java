@@ -0,0 +1,117 @@
+package io.projectriff.processor;
+
+import com.github.bsideup.liiklus.protocol.AckRequest;
+import com.github.bsideup.liiklus.protocol.ReactorLiiklusServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LagMonitorTest {
+
+    private static final FullyQualifiedTopic TOPIC = new FullyQualifiedTopic("liiklus", "in");
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    private Server gateway;
+
+    private ManagedChannel channel;
+
+    private ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub liiklus;
+
+    private LagMonitor monitor;
+
+    private Disposable polling;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        String name = "liiklus-" + UUID.randomUUID();
+        gateway = InProcessServerBuilder.forName(name).addService(new InMemoryLiiklus(2)).build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        liiklus = ReactorLiiklusServiceGrpc.newReactorStub(channel);
+        monitor = new LagMonitor("group", 1, Collections.singletonMap(TOPIC, liiklus), registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (polling != null) {
+            polling.dispose();
+        }
+        channel.shutdownNow();
+        gateway.shutdownNow();
+    }
+
+    @Test
+    void reportsRecordsReceivedButNotYetCommitted() throws InterruptedException {
+        monitor.forPartition(TOPIC, 0).received(10L);
+        monitor.forPartition(TOPIC, 1).received(3L);
+        commit(0, 4L);
+        commit(1, 3L);
+        // offsets committed by another version of the group don't count
+        liiklus.ack(AckRequest.newBuilder().setTopic("in").setGroup("group").setGroupVersion(0).setPartition(0).setOffset(10L).build()).block();
+
+        polling = monitor.start(Duration.ofMillis(10));
+
+        awaitUncommitted(0, 6.0);
+        assertThat(uncommitted(1)).isEqualTo(0.0);
+        assertThat(registry.get("riff.processor.uncommitted.total").gauge().value()).isEqualTo(6.0);
+
+        commit(0, 10L);
+
+        awaitUncommitted(0, 0.0);
+    }
+
+    @Test
+    void reportsAnUnknownValueUntilAnOffsetIsCommitted() throws InterruptedException {
+        monitor.forPartition(TOPIC, 0).received(10L);
+        monitor.forPartition(TOPIC, 1).received(5L);
+        commit(1, 2L);
+
+        polling = monitor.start(Duration.ofMillis(10));
+
+        awaitUncommitted(1, 3.0);
+        assertThat(uncommitted(0)).isNaN();
+        assertThat(registry.get("riff.processor.uncommitted.total").gauge().value()).isEqualTo(3.0);
+    }
+
+    private void commit(int partition, long offset) {
+        liiklus.ack(AckRequest.newBuilder()
+                .setTopic("in")
+                .setGroup("group")
+                .setGroupVersion(1)
+                .setPartition(partition)
+                .setOffset(offset)
+                .build())
+                .block();
+    }
+
+    private double uncommitted(int partition) {
+        Gauge gauge = registry.get("riff.processor.uncommitted")
+                .tag("topic", "in")
+                .tag("partition", Integer.toString(partition))
+                .gauge();
+        return gauge.value();
+    }
+
+    private void awaitUncommitted(int partition, double expected) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (Double.compare(uncommitted(partition), expected) != 0) {
+            assertThat(System.nanoTime()).as("uncommitted records of partition %d", partition).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
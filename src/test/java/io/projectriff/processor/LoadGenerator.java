@@ -0,0 +1,261 @@
+package io.projectriff.processor;
+
+import com.github.bsideup.liiklus.protocol.PublishRequest;
+import com.github.bsideup.liiklus.protocol.ReactorLiiklusServiceGrpc;
+import com.github.bsideup.liiklus.protocol.ReceiveReply;
+import com.github.bsideup.liiklus.protocol.ReceiveRequest;
+import com.github.bsideup.liiklus.protocol.SubscribeReply;
+import com.github.bsideup.liiklus.protocol.SubscribeRequest;
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.projectriff.processor.serialization.Message;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes at-rest riff {@link Message}s to an input stream at a target rate, consumes the results the processor
+ * (and function) derive from them on output streams, and reports throughput and end-to-end latency. This is meant to
+ * size processor and function deployments.
+ *
+ * <p>Each message carries its send time (in nanoseconds since the epoch) in the {@value #SENT_AT_HEADER} header, and
+ * the identifier of the run in the {@value #RUN_ID_HEADER} header, both expected to be propagated to results. Messages
+ * are published and results consumed by the same process, so latency does not depend on clocks being synchronized
+ * across machines. Output streams are consumed from their earliest offset, so that no result is missed while
+ * subscriptions are being set up, and results of other runs are skipped.</p>
+ *
+ * <p>Arguments are {@code key=value} pairs, see {@link #DEFAULTS}, e.g.</p>
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=io.projectriff.processor.LoadGenerator \
+ *     -Dexec.args="gateway=localhost:6565 input=in outputs=out rate=1000 rampTo=20000 rampDuration=5m duration=10m"
+ * </pre>
+ */
+public class LoadGenerator {
+
+    static final String SENT_AT_HEADER = "x-sent-at";
+
+    private static final ByteString SENT_AT_HEADER_BYTES = ByteString.copyFromUtf8(SENT_AT_HEADER);
+
+    static final String RUN_ID_HEADER = "x-run-id";
+
+    private static final ByteString RUN_ID_HEADER_BYTES = ByteString.copyFromUtf8(RUN_ID_HEADER);
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("gateway", "localhost:6565"); // address of the gateway
+        DEFAULTS.put("input", "in"); // the stream to publish messages to
+        DEFAULTS.put("outputs", "out"); // comma separated list of streams to consume results from
+        DEFAULTS.put("payloadSize", "1000"); // in bytes
+        DEFAULTS.put("contentType", "application/octet-stream");
+        DEFAULTS.put("headers", ""); // additional headers, as a semicolon separated list of name=value pairs
+        DEFAULTS.put("keys", "0"); // number of distinct keys, picked uniformly at random, 0 for messages without key
+        DEFAULTS.put("rate", "1000"); // messages published per second, initially
+        DEFAULTS.put("rampTo", "0"); // messages published per second at the end of the ramp, 0 for a fixed rate
+        DEFAULTS.put("rampDuration", "1m"); // time to go linearly from rate to rampTo
+        DEFAULTS.put("duration", "1m"); // time spent publishing
+        DEFAULTS.put("drain", "10s"); // time spent consuming results once publishing is over
+        DEFAULTS.put("reportInterval", "10s");
+    }
+
+    private static final Duration TICK = Duration.ofMillis(10);
+
+    private static final int MAX_PUBLISH_IN_FLIGHT = 1024;
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> settings = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2 || !DEFAULTS.containsKey(keyValue[0])) {
+                throw new IllegalArgumentException(String.format("Expected key=value arguments with a key among %s, got \"%s\"", DEFAULTS.keySet(), arg));
+            }
+            settings.put(keyValue[0], keyValue[1]);
+        }
+        String input = settings.get("input");
+        int keys = Integer.parseInt(settings.get("keys"));
+        double rate = Double.parseDouble(settings.get("rate"));
+        double rampTo = Double.parseDouble(settings.get("rampTo"));
+        long rampNanos = WindowingStrategies.parseDuration(settings.get("rampDuration")).toNanos();
+        long durationNanos = WindowingStrategies.parseDuration(settings.get("duration")).toNanos();
+        Duration drain = WindowingStrategies.parseDuration(settings.get("drain"));
+        Duration reportInterval = WindowingStrategies.parseDuration(settings.get("reportInterval"));
+
+        byte[] payload = new byte[Integer.parseInt(settings.get("payloadSize"))];
+        new Random(0).nextBytes(payload);
+        String runId = UUID.randomUUID().toString();
+        ByteString runIdBytes = ByteString.copyFromUtf8(runId);
+        Message template = Message.newBuilder()
+                .setPayload(ByteString.copyFrom(payload))
+                .setContentType(settings.get("contentType"))
+                .putAllHeaders(parseHeaders(settings.get("headers")))
+                .putHeaders(RUN_ID_HEADER, runId)
+                .build();
+        ByteString[] keyValues = new ByteString[keys];
+        for (int i = 0; i < keys; i++) {
+            keyValues[i] = ByteString.copyFromUtf8("key-" + i);
+        }
+
+        ManagedChannel channel = NettyChannelBuilder.forTarget(settings.get("gateway"))
+                .usePlaintext()
+                .build();
+        ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub liiklus = ReactorLiiklusServiceGrpc.newReactorStub(channel);
+
+        Recorder latencies = new Recorder(TimeUnit.MINUTES.toNanos(10), 3);
+        Histogram total = new Histogram(TimeUnit.MINUTES.toNanos(10), 3);
+        AtomicLong sent = new AtomicLong();
+        AtomicLong received = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+
+        String group = "load-generator-" + runId;
+        Disposable consumer = Flux.fromArray(settings.get("outputs").split(","))
+                .flatMap(output -> liiklus.subscribe(SubscribeRequest.newBuilder()
+                        .setTopic(output.trim())
+                        .setGroup(group)
+                        .setAutoOffsetReset(SubscribeRequest.AutoOffsetReset.EARLIEST)
+                        .build()))
+                .filter(SubscribeReply::hasAssignment)
+                .flatMap(reply -> liiklus.receive(ReceiveRequest.newBuilder().setAssignment(reply.getAssignment()).build()), Integer.MAX_VALUE)
+                .map(ReceiveReply::getRecord)
+                .filter(record -> runIdBytes.equals(MessageHeaders.header(record.getValue(), RUN_ID_HEADER_BYTES)))
+                .subscribe(record -> {
+                    long sentAt = sentAt(record.getValue());
+                    if (sentAt > 0L) {
+                        latencies.recordValue(Math.min(Math.max(0L, epochNanos() - sentAt), total.getHighestTrackableValue()));
+                        received.incrementAndGet();
+                    }
+                }, error -> System.err.format("Failed to consume results: %s%n", error));
+
+        long start = System.nanoTime();
+        Disposable reporter = Flux.interval(reportInterval, reportInterval)
+                .subscribe(tick -> {
+                    Histogram interval = latencies.getIntervalHistogram();
+                    total.add(interval);
+                    System.out.format("%6ds sent=%d received=%d failed=%d | interval: %s%n",
+                            TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), sent.get(), received.get(), failed.get(),
+                            describe(interval, reportInterval));
+                });
+
+        System.out.format("Publishing to %s with %s%n", input, settings);
+        long[] issued = {0L};
+        Flux.interval(TICK)
+                .onBackpressureLatest()
+                .map(tick -> System.nanoTime() - start)
+                .takeWhile(elapsed -> elapsed < durationNanos)
+                .concatMapIterable(elapsed -> {
+                    long target = (long) target(rate, rampTo, rampNanos, elapsed);
+                    int count = (int) Math.max(0L, target - issued[0]);
+                    issued[0] += count;
+                    return Collections.nCopies(count, elapsed);
+                })
+                .flatMap(elapsed -> {
+                    Message.Builder message = template.toBuilder().putHeaders(SENT_AT_HEADER, Long.toString(epochNanos()));
+                    PublishRequest.Builder request = PublishRequest.newBuilder()
+                            .setTopic(input)
+                            .setValue(message.build().toByteString());
+                    if (keys > 0) {
+                        request.setKey(keyValues[ThreadLocalRandom.current().nextInt(keys)]);
+                    }
+                    return liiklus.publish(request.build())
+                            .doOnSuccess(reply -> sent.incrementAndGet())
+                            .onErrorResume(error -> {
+                                failed.incrementAndGet();
+                                return Mono.empty();
+                            });
+                }, MAX_PUBLISH_IN_FLIGHT)
+                .then()
+                .block();
+
+        Thread.sleep(drain.toMillis());
+        reporter.dispose();
+        consumer.dispose();
+        total.add(latencies.getIntervalHistogram());
+        long elapsed = System.nanoTime() - start;
+        System.out.format("Sent %d messages (%d failed) and received %d results in %ds%n",
+                sent.get(), failed.get(), received.get(), TimeUnit.NANOSECONDS.toSeconds(elapsed));
+        System.out.format("Total: %s%n", describe(total, Duration.ofNanos(elapsed)));
+        channel.shutdownNow();
+    }
+
+    /**
+     * Returns the number of messages that should have been published after the given time, given a rate that goes
+     * linearly from {@code rate} to {@code rampTo} over {@code rampNanos}, and stays at {@code rampTo} afterwards.
+     */
+    private static double target(double rate, double rampTo, long rampNanos, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        if (rampTo <= 0.0) {
+            return rate * seconds;
+        }
+        double rampSeconds = rampNanos / 1e9;
+        if (seconds <= rampSeconds) {
+            return rate * seconds + (rampTo - rate) * seconds * seconds / (2 * rampSeconds);
+        }
+        return (rate + rampTo) * rampSeconds / 2 + rampTo * (seconds - rampSeconds);
+    }
+
+    private static String describe(Histogram histogram, Duration over) {
+        return String.format("%.0f results/s, latency p50=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+                histogram.getTotalCount() * 1e9 / Math.max(1L, over.toNanos()),
+                histogram.getValueAtPercentile(50.0) / 1e6,
+                histogram.getValueAtPercentile(99.0) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMaxValue() / 1e6);
+    }
+
+    private static Map<String, String> parseHeaders(String headers) {
+        Map<String, String> result = new LinkedHashMap<>();
+        Arrays.stream(headers.split(";"))
+                .filter(header -> !header.trim().isEmpty())
+                .forEach(header -> {
+                    String[] nameValue = header.split("=", 2);
+                    if (nameValue.length != 2) {
+                        throw new IllegalArgumentException(String.format("Expected headers in the form name=value, got \"%s\"", header));
+                    }
+                    result.put(nameValue[0].trim(), nameValue[1].trim());
+                });
+        return result;
+    }
+
+    /**
+     * Returns the send time stamped on a serialized message, or {@code 0} if absent or invalid. This reads the header
+     * straight from the message bytes, so that measuring latency does not allocate per result.
+     */
+    static long sentAt(ByteString message) {
+        ByteString sentAt = MessageHeaders.header(message, SENT_AT_HEADER_BYTES);
+        if (sentAt == null || sentAt.isEmpty()) {
+            return 0L;
+        }
+        long value = 0L;
+        for (int i = 0; i < sentAt.size(); i++) {
+            int digit = sentAt.byteAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return 0L;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the current time in nanoseconds since the epoch, the format of the {@value #SENT_AT_HEADER} header.
+     */
+    static long epochNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+}
@@ -0,0 +1,84 @@
+package io.projectriff.processor;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import io.projectriff.processor.serialization.Message;
+
+import java.io.IOException;
+
+/**
+ * Reads headers of serialized at-rest {@link Message}s in place, for measuring tools that look up a single header of
+ * every result (e.g. a send timestamp) without decoding whole messages.
+ */
+final class MessageHeaders {
+
+    private static final int MESSAGE_HEADERS_TAG = tag(Message.HEADERS_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+
+    private static final int MAP_ENTRY_KEY_TAG = tag(1, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+
+    private static final int MAP_ENTRY_VALUE_TAG = tag(2, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+
+    private MessageHeaders() {
+    }
+
+    /**
+     * Returns the value of the given header of a serialized at-rest {@link Message} (or {@code OutputFrame}), as UTF-8
+     * bytes, or {@code null} if absent. Unlike {@link Message#getHeadersMap()}, this does not materialize the headers
+     * map nor any of its keys and values. The returned bytes share the storage of the message.
+     */
+    static ByteString header(ByteString message, ByteString name) {
+        CodedInputStream in = message.newCodedInput();
+        ByteString value = null;
+        try {
+            int tag;
+            while ((tag = in.readTag()) != 0) {
+                if (tag != MESSAGE_HEADERS_TAG) {
+                    in.skipField(tag);
+                    continue;
+                }
+                int limit = in.pushLimit(in.readRawVarint32());
+                boolean matches = false;
+                int valueStart = 0;
+                int valueLength = 0;
+                int entryTag;
+                while ((entryTag = in.readTag()) != 0) {
+                    if (entryTag == MAP_ENTRY_KEY_TAG) {
+                        int length = in.readRawVarint32();
+                        matches = regionEquals(message, in.getTotalBytesRead(), length, name);
+                        in.skipRawBytes(length);
+                    } else if (entryTag == MAP_ENTRY_VALUE_TAG) {
+                        valueLength = in.readRawVarint32();
+                        valueStart = in.getTotalBytesRead();
+                        in.skipRawBytes(valueLength);
+                    } else {
+                        in.skipField(entryTag);
+                    }
+                }
+                in.popLimit(limit);
+                if (matches) {
+                    value = message.substring(valueStart, valueStart + valueLength); // last entry wins, as in a map
+                }
+            }
+            return value;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean regionEquals(ByteString bytes, int offset, int length, ByteString other) {
+        if (length != other.size()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes.byteAt(offset + i) != other.byteAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int tag(int fieldNumber, int wireType) {
+        return (fieldNumber << 3) | wireType;
+    }
+}
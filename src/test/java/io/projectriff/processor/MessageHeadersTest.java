@@ -0,0 +1,64 @@
+package io.projectriff.processor;
+
+import com.google.protobuf.ByteString;
+import io.projectriff.processor.serialization.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageHeadersTest {
+
+    private final Random random = new Random(0);
+
+    @Test
+    void readsHeadersWithoutParsingMessages() {
+        ByteString message = Message.newBuilder()
+                .setPayload(ByteString.copyFromUtf8("payload"))
+                .setContentType("text/plain")
+                .putHeaders("x-sent-at", "123456789")
+                .putHeaders("x-sent", "no")
+                .putHeaders("empty", "")
+                .build()
+                .toByteString();
+
+        assertThat(MessageHeaders.header(message, ByteString.copyFromUtf8("x-sent-at"))).isEqualTo(ByteString.copyFromUtf8("123456789"));
+        assertThat(MessageHeaders.header(message, ByteString.copyFromUtf8("x-sent"))).isEqualTo(ByteString.copyFromUtf8("no"));
+        assertThat(MessageHeaders.header(message, ByteString.copyFromUtf8("empty"))).isEqualTo(ByteString.EMPTY);
+        assertThat(MessageHeaders.header(message, ByteString.copyFromUtf8("x-sent-a"))).isNull();
+        assertThat(MessageHeaders.header(ByteString.EMPTY, ByteString.copyFromUtf8("x-sent-at"))).isNull();
+    }
+
+    @Test
+    void readsTheLastValueOfRepeatedHeaders() {
+        ByteString message = Message.newBuilder().putHeaders("key", "first").build().toByteString()
+                .concat(Message.newBuilder().putHeaders("key", "second").build().toByteString());
+
+        assertThat(MessageHeaders.header(message, ByteString.copyFromUtf8("key"))).isEqualTo(ByteString.copyFromUtf8("second"));
+    }
+
+    @Test
+    void readsHeadersOfRandomMessages() {
+        for (int i = 0; i < 100; i++) {
+            Message message = randomMessage();
+            ByteString bytes = message.toByteString();
+            message.getHeadersMap().forEach((name, value) ->
+                    assertThat(MessageHeaders.header(bytes, ByteString.copyFromUtf8(name))).isEqualTo(ByteString.copyFromUtf8(value)));
+            assertThat(MessageHeaders.header(bytes, ByteString.copyFromUtf8("absent"))).isNull();
+        }
+    }
+
+    private Message randomMessage() {
+        byte[] payload = new byte[random.nextInt(3) == 0 ? 0 : random.nextInt(20_000)];
+        random.nextBytes(payload);
+        Message.Builder message = Message.newBuilder()
+                .setPayload(ByteString.copyFrom(payload))
+                .setContentType(random.nextBoolean() ? "" : "application/json");
+        int headers = random.nextInt(5);
+        for (int i = 0; i < headers; i++) {
+            message.putHeaders("header-" + i, random.nextBoolean() ? "" : "value-" + random.nextInt());
+        }
+        return message.build();
+    }
+}
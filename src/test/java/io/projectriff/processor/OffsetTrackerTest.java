@@ -0,0 +1,112 @@
+package io.projectriff.processor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffsetTrackerTest {
+
+    private AckCoalescer.PartitionAcks acks;
+
+    private OffsetTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        // a batch size that is never reached, so that nothing is ever sent to the (absent) gateway
+        AckCoalescer coalescer = new AckCoalescer("group", 0, Integer.MAX_VALUE, Duration.ofHours(1), PipelineMetrics.disabled());
+        acks = coalescer.forPartition(new FullyQualifiedTopic("gateway:6565", "topic"), null, 0);
+        tracker = new OffsetTracker(acks);
+    }
+
+    @Test
+    void acknowledgesNothingUntilTheOldestRecordCompletes() {
+        long first = tracker.track(10L);
+        long second = tracker.track(11L);
+        long third = tracker.track(12L);
+
+        tracker.complete(second);
+        tracker.complete(third);
+        assertThat(acks.lastAcknowledged()).isEqualTo(-1L);
+
+        tracker.complete(first);
+        assertThat(acks.lastAcknowledged()).isEqualTo(12L);
+    }
+
+    @Test
+    void advancesTheWatermarkUpToTheFirstIncompleteRecord() {
+        long first = tracker.track(10L);
+        long second = tracker.track(11L);
+        long third = tracker.track(12L);
+
+        tracker.complete(first);
+        assertThat(acks.lastAcknowledged()).isEqualTo(10L);
+
+        tracker.complete(third);
+        assertThat(acks.lastAcknowledged()).isEqualTo(10L);
+
+        tracker.complete(second);
+        assertThat(acks.lastAcknowledged()).isEqualTo(12L);
+    }
+
+    @Test
+    void followsOffsetGaps() {
+        long first = tracker.track(10L);
+        long second = tracker.track(20L);
+
+        tracker.complete(first);
+        tracker.complete(second);
+
+        assertThat(acks.lastAcknowledged()).isEqualTo(20L);
+    }
+
+    @Test
+    void keepsCompletionStateWhenGrowing() {
+        int count = 5000; // several times the initial capacity
+        List<Long> sequences = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            sequences.add(tracker.track(i));
+        }
+        // complete everything but the oldest record, out of order, while more records are tracked
+        List<Long> shuffled = new ArrayList<>(sequences.subList(1, count));
+        Collections.shuffle(shuffled, new Random(0));
+        for (long sequence : shuffled.subList(0, count / 2)) {
+            tracker.complete(sequence);
+        }
+        for (int i = count; i < 3 * count; i++) {
+            sequences.add(tracker.track(i));
+        }
+        for (long sequence : shuffled.subList(count / 2, shuffled.size())) {
+            tracker.complete(sequence);
+        }
+        assertThat(acks.lastAcknowledged()).isEqualTo(-1L);
+
+        tracker.complete(sequences.get(0));
+        assertThat(acks.lastAcknowledged()).isEqualTo(count - 1L);
+
+        for (long sequence : sequences.subList(count, 3 * count)) {
+            tracker.complete(sequence);
+        }
+        assertThat(acks.lastAcknowledged()).isEqualTo(3L * count - 1L);
+    }
+
+    @Test
+    void reusesSlotsOfCompletedRecords() {
+        for (int i = 0; i < 10_000; i++) {
+            tracker.complete(tracker.track(i));
+        }
+        long pending = tracker.track(10_000L);
+        long next = tracker.track(10_001L);
+        tracker.complete(next);
+        assertThat(acks.lastAcknowledged()).isEqualTo(9_999L);
+
+        tracker.complete(pending);
+        assertThat(acks.lastAcknowledged()).isEqualTo(10_001L);
+    }
+}
@@ -0,0 +1,95 @@
+package io.projectriff.processor;
+
+import com.github.bsideup.liiklus.protocol.PublishRequest;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.projectriff.invoker.rpc.OutputFrame;
+import io.projectriff.invoker.rpc.OutputSignal;
+import io.projectriff.processor.serialization.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares turning a serialized {@link OutputSignal} (as received from the function) into a serialized
+ * {@link PublishRequest} (as sent to the gateway), by materializing messages versus filtering bytes. This is the
+ * {@code createPublishRequest()} path of {@link Processor}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OutputTranscodingBenchmark {
+
+    private static final String TOPIC = "some-output-stream";
+
+    @Param({"100", "10000", "1000000"})
+    public int payloadSize;
+
+    @Param({"0", "4", "16"})
+    public int headerCount;
+
+    private ByteString outputSignal;
+
+    @Setup
+    public void setUp() {
+        byte[] payload = new byte[payloadSize];
+        new Random(0).nextBytes(payload);
+        OutputFrame.Builder frame = OutputFrame.newBuilder()
+                .setPayload(ByteString.copyFrom(payload))
+                .setContentType("application/octet-stream")
+                .setResultIndex(1);
+        for (int i = 0; i < headerCount; i++) {
+            frame.putHeaders("some-header-" + i, "some-value-" + i);
+        }
+        outputSignal = OutputSignal.newBuilder()
+                .setData(frame)
+                .build()
+                .toByteString();
+    }
+
+    /**
+     * The implementation prior to byte level transcoding.
+     */
+    @Benchmark
+    public byte[] materialized() throws InvalidProtocolBufferException {
+        OutputFrame next = OutputSignal.parseFrom(outputSignal).getData();
+        Message msg = Message.newBuilder()
+                .setPayload(next.getPayload())
+                .setContentType(next.getContentType())
+                .putAllHeaders(next.getHeadersMap())
+                .build();
+
+        return PublishRequest.newBuilder()
+                .setValue(msg.toByteString())
+                .setTopic(TOPIC)
+                .build()
+                .toByteArray();
+    }
+
+    @Benchmark
+    public byte[] filtered() {
+        Transcoding.OutputFrameParts parts = Transcoding.splitOutputFrame(Transcoding.outputFrame(outputSignal));
+        if (parts.getResultIndex() != 1) {
+            throw new IllegalStateException();
+        }
+        return PublishRequest.newBuilder()
+                .setValue(parts.getMessage())
+                .setTopic(TOPIC)
+                .build()
+                .toByteArray();
+    }
+}
@@ -0,0 +1,445 @@
+package io.projectriff.processor;
+
+import com.github.bsideup.liiklus.protocol.AckRequest;
+import com.github.bsideup.liiklus.protocol.GetOffsetsRequest;
+import com.github.bsideup.liiklus.protocol.LiiklusServiceGrpc;
+import com.github.bsideup.liiklus.protocol.PublishRequest;
+import com.github.bsideup.liiklus.protocol.ReactorLiiklusServiceGrpc;
+import com.github.bsideup.liiklus.protocol.ReceiveRequest;
+import com.github.bsideup.liiklus.protocol.SubscribeReply;
+import com.github.bsideup.liiklus.protocol.SubscribeRequest;
+import com.google.protobuf.ByteString;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ClientInterceptors;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.projectriff.processor.serialization.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the processor in-process, against an {@link InMemoryLiiklus} gateway and an {@link InMemoryFunction}.
+ */
+class ProcessorTest {
+
+    private static final int PARTITIONS = 4;
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private static final String ID = "id";
+
+    private static final ByteString ID_BYTES = ByteString.copyFromUtf8(ID);
+
+    private final Queue<String> results = new ConcurrentLinkedQueue<>();
+
+    private final List<Disposable> disposables = new ArrayList<>();
+
+    private Server gateway;
+
+    private Server function;
+
+    private ManagedChannel gatewayChannel;
+
+    private ManagedChannel functionChannel;
+
+    private ReactorLiiklusServiceGrpc.ReactorLiiklusServiceStub liiklus;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        String gatewayName = "liiklus-" + UUID.randomUUID();
+        String functionName = "function-" + UUID.randomUUID();
+        gateway = InProcessServerBuilder.forName(gatewayName).addService(new InMemoryLiiklus(PARTITIONS)).build().start();
+        function = InProcessServerBuilder.forName(functionName).addService(InMemoryFunction.echo()).build().start();
+        gatewayChannel = InProcessChannelBuilder.forName(gatewayName).build();
+        functionChannel = InProcessChannelBuilder.forName(functionName).build();
+        liiklus = ReactorLiiklusServiceGrpc.newReactorStub(gatewayChannel);
+    }
+
+    @AfterEach
+    void tearDown() {
+        disposables.forEach(Disposable::dispose);
+        gatewayChannel.shutdownNow();
+        functionChannel.shutdownNow();
+        gateway.shutdownNow();
+        function.shutdownNow();
+    }
+
+    @Test
+    void adaptiveWindowsEndWithinTheInFlightBudget() throws InterruptedException {
+        int records = 5_000;
+        Queue<InvocationStats> stats = new ConcurrentLinkedQueue<>();
+        WindowingStrategy windowing = recordingStats(WindowingStrategies.parse("adaptive:200ms"), stats);
+        consumeResults();
+        start(processor()
+                .windowing(windowing)
+                .maxInFlightBytes(100_000L));
+
+        publish(0, records);
+
+        awaitResults(records);
+        assertThat(stats).filteredOn(invocation -> invocation.getRecords() > 0).isNotEmpty().allSatisfy(invocation -> {
+            assertThat(invocation.getSetupTime()).isGreaterThanOrEqualTo(Duration.ZERO);
+            assertThat(invocation.getMeanRecordLatency()).isGreaterThanOrEqualTo(Duration.ZERO);
+        });
+    }
+
+    @Test
+    void resumesAfterTheLastProcessedRecordOnRestart() throws InterruptedException {
+        consumeResults();
+        Processor.Builder processor = processor().windowing(WindowingStrategies.countOrTime(10, Duration.ofMillis(50)));
+        // few enough records for some partitions to only have the one at offset 0 processed before the restart
+        int before = PARTITIONS + 2;
+        Disposable first = start(processor);
+        publish(0, before);
+        awaitResults(before);
+        first.dispose();
+        awaitCommitted(before);
+
+        start(processor);
+        publish(before, 200);
+        awaitResults(before + 200);
+        Thread.sleep(200);
+
+        assertThat(results).hasSize(before + 200).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void completesRecordsOfInvocationsTheFunctionEndsEarly() throws IOException, InterruptedException {
+        int records = 1_000;
+        useFunction(InMemoryFunction.takeFirst(2));
+        consumeResults();
+        start(processor()
+                .windowing(WindowingStrategies.countOrTime(10, Duration.ofMillis(50)))
+                .maxInFlightBytes(5_000L));
+
+        publish(0, records);
+
+        awaitCommitted(records);
+        assertThat(results).isNotEmpty().doesNotHaveDuplicates();
+    }
+
+    @Test
+    void holdsRecordsWithinTheInFlightBudgetUnderASlowFunction() throws IOException, InterruptedException {
+        int records = 200;
+        long budget = 2_000L;
+        AtomicInteger received = new AtomicInteger();
+        useFunction(InMemoryFunction.slow(Duration.ofMillis(10)));
+        consumeResults();
+        start(processor()
+                .gatewayChannels(address -> countingReceived(gatewayChannel, received))
+                .windowing(WindowingStrategies.countOrTime(5, Duration.ofMillis(100)))
+                .receivePrefetch(1024)
+                .maxInFlightBytes(budget));
+
+        publish(0, records);
+
+        // records are over 100 bytes each, and a few results may not have been consumed yet
+        int bound = (int) (budget / 100) + PARTITIONS + 10;
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (results.size() < records) {
+            assertThat(received.get() - results.size()).as("records received and not processed yet").isLessThanOrEqualTo(bound);
+            assertThat(System.nanoTime()).as("%d results received out of %d", results.size(), records).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void resumesAfterTheOffsetsSeededFromThePreviousGroupVersion() throws InterruptedException {
+        publish(0, 100).forEach((partition, offset) -> commit(1, partition, offset));
+        consumeResults();
+        start(processor().group("processor", 2, 1));
+
+        publish(100, 50);
+
+        awaitResults(50);
+        Thread.sleep(200);
+        assertThat(results).hasSize(50).doesNotHaveDuplicates().allSatisfy(id -> assertThat(Integer.parseInt(id)).isGreaterThanOrEqualTo(100));
+    }
+
+    @Test
+    void startsOverWithoutOffsetsOfThePreviousGroupVersion() throws InterruptedException {
+        publish(0, 100);
+        consumeResults();
+        start(processor().group("processor", 2, 1));
+
+        publish(100, 50);
+
+        awaitResults(150);
+        Thread.sleep(200);
+        assertThat(results).hasSize(150).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void rejectsWindowingThatMayNotEndWithinTheInFlightBudget() {
+        assertThatThrownBy(() -> processor()
+                .windowing(WindowingStrategies.count(100))
+                .maxInFlightBytes(1_000_000L)
+                .build())
+                .hasMessageContaining("MAX_IN_FLIGHT_BYTES");
+        assertThatThrownBy(() -> processor()
+                .windowing(WindowingStrategies.bytes(1_000))
+                .maxInFlightBytes(1_999L)
+                .invocationConcurrency(2)
+                .build())
+                .hasMessageContaining("MAX_IN_FLIGHT_BYTES");
+        assertThatThrownBy(() -> processor()
+                .windowing(WindowingStrategies.bytes(1_000))
+                .maxInFlightBytes(1_000_000L)
+                .invocationConcurrency(Processor.PER_PARTITION)
+                .build())
+                .hasMessageContaining("INVOCATION_CONCURRENCY");
+
+        processor().windowing(WindowingStrategies.bytes(1_000)).maxInFlightBytes(2_000L).invocationConcurrency(2).build();
+        processor().windowing(WindowingStrategies.count(100)).build();
+        processor().windowing(WindowingStrategies.countOrTime(100, Duration.ofSeconds(1))).maxInFlightBytes(1L).build();
+    }
+
+    @Test
+    void keepsPublishingToAnOutputWhileAnotherOneIsStalled() throws IOException, InterruptedException {
+        int records = 100;
+        int outputBuffer = 16;
+        useFunction(InMemoryFunction.fanOut(2, 2));
+        Channel stalling = stallingPublishes(gatewayChannel);
+        consumeResults();
+        start(processor()
+                .outputs(Arrays.asList(new FullyQualifiedTopic("liiklus", "out"), new FullyQualifiedTopic("stalling", "stalled")),
+                        Arrays.asList("out", "stalled"),
+                        Arrays.asList("application/octet-stream", "application/octet-stream"))
+                .gatewayChannels(address -> address.equals("stalling") ? stalling : gatewayChannel)
+                .outputBuffer(outputBuffer));
+
+        publish(0, records);
+
+        // every result buffered for the stalled output came along with one for the healthy output
+        awaitResults(outputBuffer);
+        Thread.sleep(200);
+        // once the stalled output's buffer is full, invocations wait for it
+        assertThat(results).doesNotHaveDuplicates().hasSizeLessThan(records);
+    }
+
+    @Test
+    void rejectsALowTideAboveTheDefaultPrefetch() {
+        FullyQualifiedTopic input = new FullyQualifiedTopic("liiklus", "in", FullyQualifiedTopic.UNSET, FullyQualifiedTopic.UNSET, 300);
+
+        assertThatThrownBy(() -> processor()
+                .inputs(Collections.singletonList(input), Collections.singletonList("in"))
+                .receivePrefetch(256)
+                .build())
+                .hasMessageContaining("at most its prefetch (256), got 300");
+
+        processor().inputs(Collections.singletonList(input), Collections.singletonList("in")).receivePrefetch(300).build();
+    }
+
+    /**
+     * Replaces the function the processor invokes.
+     */
+    private void useFunction(InMemoryFunction implementation) throws IOException {
+        String functionName = "function-" + UUID.randomUUID();
+        functionChannel.shutdownNow();
+        function.shutdownNow();
+        function = InProcessServerBuilder.forName(functionName).addService(implementation).build().start();
+        functionChannel = InProcessChannelBuilder.forName(functionName).build();
+    }
+
+    private Processor.Builder processor() {
+        return Processor.builder()
+                .inputs(Collections.singletonList(new FullyQualifiedTopic("liiklus", "in")), Collections.singletonList("in"))
+                .outputs(Collections.singletonList(new FullyQualifiedTopic("liiklus", "out")),
+                        Collections.singletonList("out"),
+                        Collections.singletonList("application/octet-stream"))
+                .group("processor", 0, Processor.NO_PREVIOUS_GROUP_VERSION)
+                .autoOffsetReset(SubscribeRequest.AutoOffsetReset.EARLIEST)
+                .gatewayChannels(address -> gatewayChannel)
+                .riffStub(new RawRiffStub(functionChannel));
+    }
+
+    private Disposable start(Processor.Builder processor) {
+        Disposable processing = processor.build().process().subscribe();
+        disposables.add(processing);
+        return processing;
+    }
+
+    /**
+     * Publishes records to the input stream, each one with a payload of 100 bytes and a distinct {@value #ID} header.
+     *
+     * @return the highest offset published to, per partition
+     */
+    private Map<Integer, Long> publish(int firstId, int records) {
+        ByteString payload = ByteString.copyFrom(new byte[100]);
+        return Flux.range(firstId, records)
+                .flatMap(id -> liiklus.publish(PublishRequest.newBuilder()
+                        .setTopic("in")
+                        .setKey(ByteString.copyFromUtf8(Integer.toString(id)))
+                        .setValue(Message.newBuilder()
+                                .setPayload(payload)
+                                .setContentType("application/octet-stream")
+                                .putHeaders(ID, Integer.toString(id))
+                                .build()
+                                .toByteString())
+                        .build()), 64)
+                .<Map<Integer, Long>>reduceWith(HashMap::new, (offsets, reply) -> {
+                    offsets.merge(reply.getPartition(), reply.getOffset(), Math::max);
+                    return offsets;
+                })
+                .block();
+    }
+
+    /**
+     * Commits an offset of the input stream for the given version of the processor's consumer group.
+     */
+    private void commit(int groupVersion, int partition, long offset) {
+        liiklus.ack(AckRequest.newBuilder()
+                .setTopic("in")
+                .setGroup("processor")
+                .setGroupVersion(groupVersion)
+                .setPartition(partition)
+                .setOffset(offset)
+                .build())
+                .block();
+    }
+
+    /**
+     * Consumes results from the output stream, collecting their {@value #ID} header in {@link #results}.
+     */
+    private void consumeResults() {
+        disposables.add(liiklus.subscribe(SubscribeRequest.newBuilder()
+                .setTopic("out")
+                .setGroup("test")
+                .setAutoOffsetReset(SubscribeRequest.AutoOffsetReset.EARLIEST)
+                .build())
+                .filter(SubscribeReply::hasAssignment)
+                .flatMap(reply -> liiklus.receive(ReceiveRequest.newBuilder().setAssignment(reply.getAssignment()).build()), Integer.MAX_VALUE)
+                .subscribe(reply -> results.add(MessageHeaders.header(reply.getRecord().getValue(), ID_BYTES).toStringUtf8())));
+    }
+
+    private void awaitResults(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (results.size() < count) {
+            assertThat(System.nanoTime()).as("%d results received out of %d", results.size(), count).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Waits for the processor's consumer group to have committed the offsets of the given number of input records.
+     */
+    private void awaitCommitted(int records) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (true) {
+            long committed = liiklus.getOffsets(GetOffsetsRequest.newBuilder().setTopic("in").setGroup("processor").build())
+                    .map(reply -> reply.getOffsetsMap().values().stream().mapToLong(offset -> offset + 1).sum())
+                    .block();
+            if (committed == records) {
+                return;
+            }
+            assertThat(System.nanoTime()).as("%d records committed out of %d", committed, records).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Returns a channel counting the records handed over to the receive calls made through it.
+     */
+    private static Channel countingReceived(Channel channel, AtomicInteger received) {
+        return ClientInterceptors.intercept(channel, new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                ClientCall<ReqT, RespT> call = next.newCall(method, callOptions);
+                if (!method.getFullMethodName().equals(LiiklusServiceGrpc.getReceiveMethod().getFullMethodName())) {
+                    return call;
+                }
+                return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(call) {
+                    @Override
+                    public void start(Listener<RespT> responseListener, Metadata headers) {
+                        super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                            @Override
+                            public void onMessage(RespT message) {
+                                received.incrementAndGet();
+                                super.onMessage(message);
+                            }
+                        }, headers);
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Returns a channel on which publish calls never complete, and which otherwise behaves as the given one.
+     */
+    private static Channel stallingPublishes(Channel channel) {
+        return ClientInterceptors.intercept(channel, new ClientInterceptor() {
+            @Override
+            public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+                if (!method.getFullMethodName().equals(LiiklusServiceGrpc.getPublishMethod().getFullMethodName())) {
+                    return next.newCall(method, callOptions);
+                }
+                return new ClientCall<ReqT, RespT>() {
+                    @Override
+                    public void start(Listener<RespT> responseListener, Metadata headers) {
+                    }
+
+                    @Override
+                    public void request(int numMessages) {
+                    }
+
+                    @Override
+                    public void cancel(String message, Throwable cause) {
+                    }
+
+                    @Override
+                    public void halfClose() {
+                    }
+
+                    @Override
+                    public void sendMessage(ReqT message) {
+                    }
+                };
+            }
+        });
+    }
+
+    private static WindowingStrategy recordingStats(WindowingStrategy windowing, Queue<InvocationStats> stats) {
+        return new WindowingStrategy() {
+            @Override
+            public <T> Flux<Flux<T>> window(Flux<T> records, ToIntFunction<? super T> sizeOf) {
+                return windowing.window(records, sizeOf);
+            }
+
+            @Override
+            public void invocationCompleted(InvocationStats invocation) {
+                stats.add(invocation);
+                windowing.invocationCompleted(invocation);
+            }
+        };
+    }
+}
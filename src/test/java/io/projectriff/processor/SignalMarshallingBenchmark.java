@@ -0,0 +1,132 @@
+package io.projectriff.processor;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Drainable;
+import io.grpc.MethodDescriptor;
+import io.projectriff.invoker.rpc.InputFrame;
+import io.projectriff.invoker.rpc.InputSignal;
+import io.projectriff.invoker.rpc.OutputFrame;
+import io.projectriff.invoker.rpc.OutputSignal;
+import io.projectriff.invoker.rpc.RiffGrpc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the gRPC marshalling of {@link InputSignal}s (written to the transport) and {@link OutputSignal}s (read
+ * from the transport) by the generated protobuf marshallers, versus the raw marshaller used by {@link RawRiffStub}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SignalMarshallingBenchmark {
+
+    private static final MethodDescriptor.Marshaller<InputSignal> INPUT_MARSHALLER = RiffGrpc.getInvokeMethod().getRequestMarshaller();
+
+    private static final MethodDescriptor.Marshaller<OutputSignal> OUTPUT_MARSHALLER = RiffGrpc.getInvokeMethod().getResponseMarshaller();
+
+    @Param({"100", "10000", "1000000"})
+    public int payloadSize;
+
+    @Param({"0", "4", "16"})
+    public int headerCount;
+
+    private InputSignal inputSignal;
+
+    private ByteString rawInputSignal;
+
+    private byte[] outputSignal;
+
+    private final CountingOutputStream transport = new CountingOutputStream();
+
+    @Setup
+    public void setUp() {
+        byte[] payload = new byte[payloadSize];
+        new Random(0).nextBytes(payload);
+        InputFrame.Builder inputFrame = InputFrame.newBuilder()
+                .setPayload(ByteString.copyFrom(payload))
+                .setContentType("application/octet-stream")
+                .setArgIndex(1);
+        OutputFrame.Builder outputFrame = OutputFrame.newBuilder()
+                .setPayload(ByteString.copyFrom(payload))
+                .setContentType("application/octet-stream")
+                .setResultIndex(1);
+        for (int i = 0; i < headerCount; i++) {
+            inputFrame.putHeaders("some-header-" + i, "some-value-" + i);
+            outputFrame.putHeaders("some-header-" + i, "some-value-" + i);
+        }
+        inputSignal = InputSignal.newBuilder().setData(inputFrame).build();
+        rawInputSignal = inputSignal.toByteString();
+        outputSignal = OutputSignal.newBuilder().setData(outputFrame).build().toByteArray();
+    }
+
+    @Benchmark
+    public long writeGenerated() throws IOException {
+        return drain(INPUT_MARSHALLER.stream(inputSignal));
+    }
+
+    @Benchmark
+    public long writeRaw() throws IOException {
+        return drain(Transcoding.RAW_MARSHALLER.stream(rawInputSignal));
+    }
+
+    @Benchmark
+    public OutputSignal readGenerated() {
+        return OUTPUT_MARSHALLER.parse(new ByteArrayInputStream(outputSignal));
+    }
+
+    @Benchmark
+    public ByteString readRaw() {
+        return Transcoding.RAW_MARSHALLER.parse(new ByteArrayInputStream(outputSignal));
+    }
+
+    private long drain(InputStream stream) throws IOException {
+        transport.count = 0L;
+        if (stream instanceof Drainable) {
+            ((Drainable) stream).drainTo(transport);
+        } else {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                transport.write(buffer, 0, n);
+            }
+        }
+        return transport.count;
+    }
+
+    /**
+     * Stands for the transport buffers, only counting the bytes written.
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.projectriff.processor;
+
+import com.google.protobuf.ByteString;
+import io.projectriff.invoker.rpc.InputFrame;
+import io.projectriff.invoker.rpc.InputSignal;
+import io.projectriff.invoker.rpc.OutputFrame;
+import io.projectriff.invoker.rpc.OutputSignal;
+import io.projectriff.processor.serialization.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TranscodingTest {
+
+    private static final int[] INDICES = {0, 1, 7, 127, 128, 300, Integer.MAX_VALUE};
+
+    private final Random random = new Random(0);
+
+    @Test
+    void splicedInputSignalsMatchGeneratedOnes() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            Message message = randomMessage();
+            for (int argIndex : INDICES) {
+                ByteString spliced = Transcoding.inputSignal(message.toByteString(), Transcoding.argIndexSuffix(argIndex));
+
+                InputSignal expected = InputSignal.newBuilder()
+                        .setData(InputFrame.newBuilder()
+                                .setPayload(message.getPayload())
+                                .setContentType(message.getContentType())
+                                .putAllHeaders(message.getHeadersMap())
+                                .setArgIndex(argIndex))
+                        .build();
+                assertThat(InputSignal.parseFrom(spliced)).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void extractedOutputFramesMatchGeneratedOnes() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            Message message = randomMessage();
+            for (int resultIndex : INDICES) {
+                OutputFrame frame = outputFrame(message, resultIndex);
+                ByteString signal = OutputSignal.newBuilder().setData(frame).build().toByteString();
+
+                ByteString extracted = Transcoding.outputFrame(signal);
+                Transcoding.OutputFrameParts parts = Transcoding.splitOutputFrame(extracted);
+
+                assertThat(OutputFrame.parseFrom(extracted)).isEqualTo(frame);
+                assertThat(parts.getResultIndex()).isEqualTo(resultIndex);
+                assertThat(Message.parseFrom(parts.getMessage())).isEqualTo(message);
+            }
+        }
+    }
+
+    @Test
+    void atRestMessagesOmitTheResultIndexWhereverItIs() throws Exception {
+        Message message = randomMessage();
+        ByteString resultIndexFirst = OutputFrame.newBuilder().setResultIndex(3).build().toByteString()
+                .concat(message.toByteString());
+
+        Transcoding.OutputFrameParts parts = Transcoding.splitOutputFrame(resultIndexFirst);
+
+        assertThat(parts.getMessage()).isEqualTo(message.toByteString());
+        assertThat(Message.parseFrom(parts.getMessage())).isEqualTo(message);
+        assertThat(parts.getResultIndex()).isEqualTo(3);
+    }
+
+    @Test
+    void emptySignalsAndFramesAreDefaultInstances() {
+        assertThat(Transcoding.outputFrame(ByteString.EMPTY)).isEqualTo(ByteString.EMPTY);
+        assertThat(Transcoding.splitOutputFrame(ByteString.EMPTY).getResultIndex()).isZero();
+        assertThat(Transcoding.splitOutputFrame(ByteString.EMPTY).getMessage()).isEqualTo(ByteString.EMPTY);
+    }
+
+    @Test
+    void argIndexOverridesAnyFieldOfTheSameNumberInTheStoredMessage() throws Exception {
+        Message message = randomMessage();
+        ByteString stray = InputFrame.newBuilder().setArgIndex(5).build().toByteString();
+        ByteString stored = message.toByteString().concat(stray);
+
+        for (int argIndex : INDICES) {
+            ByteString spliced = Transcoding.inputSignal(stored, Transcoding.argIndexSuffix(argIndex));
+
+            assertThat(InputSignal.parseFrom(spliced).getData().getArgIndex()).as("argIndex %d", argIndex).isEqualTo(argIndex);
+        }
+    }
+
+    private Message randomMessage() {
+        byte[] payload = new byte[random.nextInt(3) == 0 ? 0 : random.nextInt(20_000)];
+        random.nextBytes(payload);
+        Message.Builder message = Message.newBuilder()
+                .setPayload(ByteString.copyFrom(payload))
+                .setContentType(random.nextBoolean() ? "" : "application/json");
+        int headers = random.nextInt(5);
+        for (int i = 0; i < headers; i++) {
+            message.putHeaders("header-" + i, random.nextBoolean() ? "" : "value-" + random.nextInt());
+        }
+        return message.build();
+    }
+
+    private static OutputFrame outputFrame(Message message, int resultIndex) {
+        return OutputFrame.newBuilder()
+                .setPayload(message.getPayload())
+                .setContentType(message.getContentType())
+                .putAllHeaders(message.getHeadersMap())
+                .setResultIndex(resultIndex)
+                .build();
+    }
+}
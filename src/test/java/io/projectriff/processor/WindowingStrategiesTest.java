@@ -0,0 +1,106 @@
+package io.projectriff.processor;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WindowingStrategiesTest {
+
+    @Test
+    void parsesEveryKindOfWindowing() {
+        assertThat(WindowingStrategies.parse("time:60s")).hasToString("time:PT1M");
+        assertThat(WindowingStrategies.parse("count:1000")).hasToString("count:1000");
+        assertThat(WindowingStrategies.parse("bytes:1048576")).hasToString("bytes:1048576");
+        assertThat(WindowingStrategies.parse("count-or-time:1000,5s")).hasToString("count-or-time:1000,PT5S");
+        assertThat(WindowingStrategies.parse("adaptive:500ms,10ms,2m")).hasToString("adaptive:PT0.5S,PT0.01S,PT2M");
+    }
+
+    @Test
+    void toleratesWhitespaceAroundParameters() {
+        assertThat(WindowingStrategies.parse("count-or-time: 1000 , 5s ")).hasToString("count-or-time:1000,PT5S");
+        assertThat(WindowingStrategies.parse("adaptive: 1s, 1s, 1s")).hasToString("adaptive:PT1S,PT1S,PT1S");
+    }
+
+    @Test
+    void defaultsTheBoundsOfAdaptiveWindows() {
+        assertThat(WindowingStrategies.parse("adaptive:500ms")).hasToString("adaptive:PT0.5S,PT0.1S,PT1M");
+    }
+
+    @Test
+    void rejectsInvalidConfigurations() {
+        for (String configuration : new String[]{
+                "time",
+                "60s",
+                "hourly:1",
+                "time:",
+                "count:many",
+                "bytes:1MB",
+                "count-or-time:1000",
+                "count-or-time:5s,1000",
+                "adaptive:1s,100ms",
+                "adaptive:1s,100ms,1m,1h",
+                "adaptive:1s,1m,100ms",
+        }) {
+            assertThatThrownBy(() -> WindowingStrategies.parse(configuration))
+                    .as(configuration)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void rejectsNonPositiveParameters() {
+        for (String configuration : new String[]{
+                "time:0s",
+                "count:0",
+                "count:-5",
+                "bytes:0",
+                "bytes:-1024",
+                "count-or-time:0,5s",
+                "count-or-time:-1,5s",
+                "count-or-time:1000,0ms",
+                "adaptive:0ms",
+                "adaptive:1s,0s,1m",
+                "adaptive:1s,100ms,0h",
+        }) {
+            assertThatThrownBy(() -> WindowingStrategies.parse(configuration))
+                    .as(configuration)
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("positive");
+        }
+    }
+
+    @Test
+    void namesTheVariableAndValueInErrors() {
+        assertThatThrownBy(() -> WindowingStrategies.parse("count:many"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("WINDOWING")
+                .hasMessageContaining("\"count:many\"");
+        assertThatThrownBy(() -> WindowingStrategies.parse("bytes:0"))
+                .hasMessageContaining("WINDOWING")
+                .hasMessageContaining("\"bytes:0\"");
+        assertThatThrownBy(() -> WindowingStrategies.parse("time:99999999999999999h"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("WINDOWING");
+    }
+
+    @Test
+    void parsesDurations() {
+        assertThat(WindowingStrategies.parseDuration("250ms")).isEqualTo(Duration.ofMillis(250));
+        assertThat(WindowingStrategies.parseDuration("10s")).isEqualTo(Duration.ofSeconds(10));
+        assertThat(WindowingStrategies.parseDuration("2m")).isEqualTo(Duration.ofMinutes(2));
+        assertThat(WindowingStrategies.parseDuration("1h")).isEqualTo(Duration.ofHours(1));
+        assertThat(WindowingStrategies.parseDuration(" 0s ")).isEqualTo(Duration.ZERO);
+    }
+
+    @Test
+    void rejectsInvalidDurations() {
+        for (String duration : new String[]{"", "s", "10", "10 s", "10d", "-1s", "1.5s", "ms10"}) {
+            assertThatThrownBy(() -> WindowingStrategies.parseDuration(duration))
+                    .as(duration)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+}